@@ -0,0 +1,71 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+import ca.uhn.fhir.context.FhirContext;
+import eu.interopehrate.protocols.codec.BundleCodec;
+import eu.interopehrate.protocols.codec.BundleCodecRegistry;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmarks of the codecs of the Bundles. An operation is the encoding (or
+ *               decoding) of a single resource, so the score is the time per resource.
+ *               The size of the encoded Bundles is reported by the counters encodedBytes and
+ *               resources: JMH sums them over the iteration, so the bytes per resource are
+ *               encodedBytes / resources.
+ */
+@State(Scope.Benchmark)
+public class BundleCodecBenchmark {
+
+    // constant, as required by OperationsPerInvocation
+    static final int RESOURCES = 10000;
+
+    @Param({"json", "json+gzip", "json+deflate", "cbor-iehr1", "cbor-iehr1+deflate"})
+    public String codecName;
+
+    private BundleCodec codec;
+    private Bundle bundle;
+    private byte[] encoded;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long encodedBytes;
+        public long resources;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = new BundleCodecRegistry(FhirContext.forR4()).getCodec(codecName);
+        bundle = SyntheticFhirGenerator.bundle(RESOURCES);
+        encoded = codec.encode(bundle);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESOURCES)
+    public byte[] encode(Size size) throws IOException {
+        byte[] data = codec.encode(bundle);
+        size.encodedBytes += data.length;
+        size.resources += RESOURCES;
+        return data;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESOURCES)
+    public Bundle decode() throws IOException {
+        return codec.decode(encoded);
+    }
+
+}
@@ -0,0 +1,54 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmarks of the serialization of a Bundle to JSON (as done before sending
+ *               it) and of its parsing (as done when it is received).
+ */
+@State(Scope.Benchmark)
+public class BundleJsonBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private FhirContext context;
+    private Bundle bundle;
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // the creation of the context is expensive and done once by the applications
+        context = FhirContext.forR4();
+        bundle = SyntheticFhirGenerator.bundle(size);
+        json = context.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    @Benchmark
+    public String encode() {
+        return context.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    @Benchmark
+    public Bundle parse() {
+        return context.newJsonParser().parseResource(Bundle.class, json);
+    }
+
+    @Benchmark
+    public Bundle roundTrip() {
+        String encoded = context.newJsonParser().encodeResourceToString(bundle);
+        return context.newJsonParser().parseResource(Bundle.class, encoded);
+    }
+
+}
@@ -0,0 +1,40 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.interopehrate.protocols.server.BundleMerger;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmark of the merge of the Bundles of all the categories done by
+ *               BundleMerger. The sizes grow by a factor of ten, so a linear merge shows
+ *               a score growing by the same factor.
+ */
+@State(Scope.Benchmark)
+public class BundleMergerBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    private Bundle[] bundles;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bundles = SyntheticFhirGenerator.byCategory(SyntheticFhirGenerator.bundle(size))
+                .values().toArray(new Bundle[0]);
+    }
+
+    @Benchmark
+    public Bundle merge() {
+        return BundleMerger.merge(bundles);
+    }
+
+}
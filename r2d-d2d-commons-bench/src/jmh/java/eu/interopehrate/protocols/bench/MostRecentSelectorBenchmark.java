@@ -0,0 +1,69 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import eu.interopehrate.protocols.common.ResourceClassifier;
+import eu.interopehrate.protocols.server.MostRecentSelector;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmark of the selection of the 10 most recent resources of a Bundle, done
+ *               with MostRecentSelector and by sorting the whole Bundle.
+ */
+@State(Scope.Benchmark)
+public class MostRecentSelectorBenchmark {
+
+    private static final int MOST_RECENT_SIZE = 10;
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private Bundle bundle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bundle = SyntheticFhirGenerator.bundle(size);
+    }
+
+    @Benchmark
+    public Bundle selectWithHeap() {
+        return MostRecentSelector.select(bundle, MOST_RECENT_SIZE);
+    }
+
+    @Benchmark
+    public List<Resource> selectWithSort() {
+        List<Resource> resources = new ArrayList<Resource>(bundle.getEntry().size());
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry())
+            resources.add(entry.getResource());
+
+        Collections.sort(resources, new Comparator<Resource>() {
+            @Override
+            public int compare(Resource r1, Resource r2) {
+                return time(r2) < time(r1) ? -1 : (time(r2) == time(r1) ? 0 : 1);
+            }
+        });
+
+        return resources.subList(0, Math.min(MOST_RECENT_SIZE, resources.size()));
+    }
+
+    private static long time(Resource resource) {
+        Date date = ResourceClassifier.getDate(resource);
+        return date == null ? Long.MIN_VALUE : date.getTime();
+    }
+
+}
@@ -0,0 +1,64 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Provenance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+import eu.interopehrate.protocols.provenance.ProvenanceBuilder;
+import eu.interopehrate.protocols.provenance.ResourceNode;
+import eu.interopehrate.protocols.provenance.ResourceTreeBuilder;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmarks of the creation of the tree of nodes representing a Bundle and
+ *               of the creation of the Provenances of all its containers.
+ */
+@State(Scope.Benchmark)
+public class ProvenanceTreeBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private Bundle bundle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bundle = SyntheticFhirGenerator.bundle(size);
+    }
+
+    @Benchmark
+    public ResourceNode buildTree() {
+        return new ResourceTreeBuilder().build(bundle);
+    }
+
+    @Benchmark
+    public List<Provenance> buildProvenances(SignState state) {
+        return ProvenanceBuilder.build(state.bundle, state.provider);
+    }
+
+    /*
+     * The Provenances are added to the Bundle, so a new Bundle is needed by every invocation
+     */
+    @State(Scope.Thread)
+    public static class SignState {
+        private Bundle bundle;
+        private Organization provider;
+
+        @Setup(Level.Invocation)
+        public void setUp(ProvenanceTreeBenchmark benchmark) {
+            bundle = SyntheticFhirGenerator.bundle(benchmark.size);
+            provider = SyntheticFhirGenerator.provider();
+        }
+    }
+
+}
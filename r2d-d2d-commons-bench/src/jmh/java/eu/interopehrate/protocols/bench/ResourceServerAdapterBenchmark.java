@@ -0,0 +1,54 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.Map;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+import eu.interopehrate.protocols.server.ResourceServerAdapter;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Benchmark of the merge of the Bundles returned for many categories done by
+ *               ResourceServerAdapter. Part of the resources are returned for more than one
+ *               category, so the merge must also remove the duplicates.
+ */
+@State(Scope.Benchmark)
+public class ResourceServerAdapterBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private ResourceServerAdapter adapter;
+    private ResourceCategory[] categories;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Map<ResourceCategory, Bundle> bundles =
+                SyntheticFhirGenerator.byCategory(SyntheticFhirGenerator.bundle(size));
+        categories = bundles.keySet().toArray(new ResourceCategory[0]);
+
+        adapter = new ResourceServerAdapter() {
+            @Override
+            public Bundle onResourcesRequested(ResourceCategory category, String subCategory,
+                                               String type, Date from, boolean isSummary) {
+                return bundles.get(category);
+            }
+        };
+    }
+
+    @Benchmark
+    public Bundle mergeCategories() throws Exception {
+        return adapter.onResourcesRequested(null, false, categories);
+    }
+
+}
@@ -0,0 +1,194 @@
+package eu.interopehrate.protocols.bench;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Composition;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.MedicationStatement;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import eu.interopehrate.protocols.common.FHIRResourceCategory;
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Generator of synthetic (but realistic in shape) health data used by the
+ *               benchmarks. The data is produced in blocks of ten entries:
+ *
+ *               - a Composition whose section lists two Observations
+ *               - the two Observations
+ *               - a DiagnosticReport with two Observations as results
+ *               - the two Observations
+ *               - a MedicationStatement referencing a Medication
+ *               - the Medication
+ *               - a Condition
+ *               - an Encounter
+ *
+ *               The generator is seeded, so the same size always produces the same data.
+ */
+public final class SyntheticFhirGenerator {
+
+    public static final int BLOCK_SIZE = 10;
+
+    private static final long SEED = 20210129L;
+    private static final long START_TIME = 1577836800000L; // 2020-01-01
+    private static final String LOINC = "http://loinc.org";
+    private static final String SNOMED = "http://snomed.info/sct";
+    private static final String[] LOINC_CODES = {"8867-4", "8480-6", "8462-4", "2339-0", "718-7", "29463-7"};
+    private static final String[] SNOMED_CODES = {"38341003", "44054006", "195967001", "13645005"};
+
+    private SyntheticFhirGenerator() {}
+
+    /**
+     * Method used to generate a Bundle of the provided size. All the references between the
+     * resources are resolved, as it happens after parsing a Bundle.
+     *
+     * @param size: the number of entries of the Bundle, rounded up to a multiple of BLOCK_SIZE.
+     * @return the generated Bundle.
+     */
+    public static Bundle bundle(int size) {
+        Random random = new Random(SEED);
+        Bundle bundle = new Bundle();
+        bundle.setId("Bundle/b" + size);
+        bundle.setType(Bundle.BundleType.COLLECTION);
+
+        for (int block = 0; block * BLOCK_SIZE < size; block++) {
+            Observation o1 = observation(block, 0, random);
+            Observation o2 = observation(block, 1, random);
+            Composition composition = new Composition();
+            composition.setId("Composition/c" + block);
+            composition.setStatus(Composition.CompositionStatus.FINAL);
+            composition.setDate(date(block, random));
+            composition.setTitle("Patient summary " + block);
+            composition.addSection().addEntry(new Reference(o1)).addEntry(new Reference(o2));
+
+            Observation o3 = observation(block, 2, random);
+            Observation o4 = observation(block, 3, random);
+            DiagnosticReport report = new DiagnosticReport();
+            report.setId("DiagnosticReport/dr" + block);
+            report.setStatus(DiagnosticReport.DiagnosticReportStatus.FINAL);
+            report.setIssued(date(block, random));
+            report.addCategory(concept("http://terminology.hl7.org/CodeSystem/v2-0074", "LAB"));
+            report.addResult(new Reference(o3)).addResult(new Reference(o4));
+
+            Medication medication = new Medication();
+            medication.setId("Medication/m" + block);
+            medication.setCode(concept(SNOMED, SNOMED_CODES[random.nextInt(SNOMED_CODES.length)]));
+            MedicationStatement statement = new MedicationStatement();
+            statement.setId("MedicationStatement/ms" + block);
+            statement.setStatus(MedicationStatement.MedicationStatementStatus.ACTIVE);
+            statement.setMedication(new Reference(medication));
+            statement.setEffective(new DateTimeType(date(block, random)));
+
+            Condition condition = new Condition();
+            condition.setId("Condition/cd" + block);
+            condition.setCode(concept(SNOMED, SNOMED_CODES[random.nextInt(SNOMED_CODES.length)]));
+            condition.setRecordedDate(date(block, random));
+
+            Encounter encounter = new Encounter();
+            encounter.setId("Encounter/e" + block);
+            encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+            encounter.getPeriod().setStart(date(block, random));
+
+            for (Resource r : new Resource[] {composition, o1, o2, report, o3, o4,
+                    statement, medication, condition, encounter})
+                bundle.addEntry().setResource(r);
+        }
+
+        return bundle;
+    }
+
+    /**
+     * Method used to split a Bundle in one Bundle per category, as a listener would return
+     * them. The Composition Bundle also contains the Observations listed by the Compositions
+     * and the DiagnosticReport Bundle the Observations listed as results, so the same
+     * resource is returned for more than one category.
+     *
+     * @param bundle: a Bundle created by this generator.
+     * @return a Bundle for each category, in a stable order.
+     */
+    public static Map<ResourceCategory, Bundle> byCategory(Bundle bundle) {
+        Map<ResourceType, FHIRResourceCategory> categories = new EnumMap<ResourceType, FHIRResourceCategory>(ResourceType.class);
+        categories.put(ResourceType.Composition, FHIRResourceCategory.COMPOSITION);
+        categories.put(ResourceType.Observation, FHIRResourceCategory.OBSERVATION);
+        categories.put(ResourceType.DiagnosticReport, FHIRResourceCategory.DIAGNOSTIC_REPORT);
+        categories.put(ResourceType.MedicationStatement, FHIRResourceCategory.MEDICATION_REQUEST);
+        categories.put(ResourceType.Condition, FHIRResourceCategory.CONDITION);
+        categories.put(ResourceType.Encounter, FHIRResourceCategory.ENCOUNTER);
+
+        Map<ResourceCategory, Bundle> result = new LinkedHashMap<ResourceCategory, Bundle>();
+        for (FHIRResourceCategory category : categories.values())
+            result.put(category, new Bundle());
+
+        Resource resource;
+        FHIRResourceCategory category;
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            resource = entry.getResource();
+            category = categories.get(resource.getResourceType());
+            if (category == null)
+                continue;
+
+            result.get(category).addEntry().setResource(resource);
+            if (resource instanceof Composition) {
+                for (Reference ref : ((Composition) resource).getSectionFirstRep().getEntry())
+                    result.get(category).addEntry().setResource((Resource) ref.getResource());
+            } else if (resource instanceof DiagnosticReport) {
+                for (Reference ref : ((DiagnosticReport) resource).getResult())
+                    result.get(category).addEntry().setResource((Resource) ref.getResource());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return the Organization used as provider of the generated resources.
+     */
+    public static Organization provider() {
+        Organization organization = new Organization();
+        organization.setId("Organization/hospital");
+        organization.setName("Synthetic Hospital");
+
+        return organization;
+    }
+
+    private static Observation observation(int block, int index, Random random) {
+        Observation observation = new Observation();
+        observation.setId("Observation/o" + block + "-" + index);
+        observation.setStatus(Observation.ObservationStatus.FINAL);
+        observation.setCode(concept(LOINC, LOINC_CODES[random.nextInt(LOINC_CODES.length)]));
+        observation.setEffective(new DateTimeType(date(block, random)));
+        observation.setValue(new Quantity().setValue(40 + random.nextInt(1600) / 10.0)
+                .setUnit("mm[Hg]").setSystem("http://unitsofmeasure.org"));
+
+        return observation;
+    }
+
+    private static CodeableConcept concept(String system, String code) {
+        return new CodeableConcept().addCoding(new Coding(system, code, null));
+    }
+
+    private static Date date(int block, Random random) {
+        return new Date(START_TIME + block * 3600000L + random.nextInt(3600000));
+    }
+
+}
@@ -0,0 +1,148 @@
+package eu.interopehrate.protocols.client;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Executes the asynchronous requests of AsyncResourceReaderAdapter and
+ *               AsyncResourceWriterAdapter. At most maxInFlight requests are running at the
+ *               same time: the others wait in a queue, without blocking the caller, and are
+ *               started as soon as a running request completes. A request not completed within
+ *               the timeout (counted from its submission) is cancelled and fails with a
+ *               TimeoutException. Sharing an instance between a reader and a writer bounds
+ *               the requests of both.
+ *
+ *  Usage:
+ *
+ *  AsyncRequestExecutor requests = new AsyncRequestExecutor(executorService, 4, 30000);
+ *  AsyncResourceReader reader = new AsyncResourceReaderAdapter(syncReader, requests);
+ *  AsyncResourceWriter writer = new AsyncResourceWriterAdapter(syncWriter, requests);
+ *
+ */
+public class AsyncRequestExecutor {
+
+    private final Executor executor;
+    private final Semaphore inFlight;
+    private final long timeoutMillis;
+    private final Queue<PendingRequest> pending = new ConcurrentLinkedQueue<PendingRequest>();
+
+    /**
+     *
+     * @param executor: the executor running the requests, it is not shut down by this class.
+     * @param maxInFlight: the maximum number of requests running at the same time.
+     * @param timeoutMillis: the maximum duration of a request, 0 for no timeout.
+     */
+    public AsyncRequestExecutor(Executor executor, int maxInFlight, long timeoutMillis) {
+        if (executor == null)
+            throw new IllegalArgumentException("Invalid argument: the executor cannot be null.");
+        if (maxInFlight < 1 || timeoutMillis < 0)
+            throw new IllegalArgumentException("Invalid arguments: maxInFlight must be positive and timeoutMillis cannot be negative.");
+
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Method used to submit a request.
+     *
+     * @param request: the request to be executed.
+     * @return the result of the request.
+     */
+    public <T> AsyncResult<T> submit(Callable<T> request) {
+        final AsyncResult<T> result = new AsyncResult<T>(request);
+        if (timeoutMillis > 0) {
+            result.setTimeout(TimeoutScheduler.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    result.expire();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS));
+        }
+
+        pending.add(new PendingRequest(result));
+        startPending();
+
+        return result;
+    }
+
+    /**
+     *
+     * @return the number of requests waiting to be started.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /*
+     * Starts the waiting requests while there are free slots. Both the submission and the
+     * completion of a request invoke it, so no request is left waiting with a free slot.
+     */
+    private void startPending() {
+        PendingRequest next;
+        while (!pending.isEmpty() && inFlight.tryAcquire()) {
+            next = pending.poll();
+            if (next == null) {
+                inFlight.release();
+                continue;
+            }
+
+            try {
+                executor.execute(next);
+            } catch (RuntimeException e) {
+                // for instance RejectedExecutionException, the request fails
+                inFlight.release();
+                next.result.fail(e);
+            }
+        }
+    }
+
+    private final class PendingRequest implements Runnable {
+        private final AsyncResult<?> result;
+
+        private PendingRequest(AsyncResult<?> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // no effect if the request has been cancelled while waiting
+                result.run();
+            } finally {
+                inFlight.release();
+                startPending();
+            }
+        }
+    }
+
+    /*
+     * Single daemon thread used to cancel the requests not completed in time
+     */
+    private static final class TimeoutScheduler {
+        private static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "iehr-request-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+}
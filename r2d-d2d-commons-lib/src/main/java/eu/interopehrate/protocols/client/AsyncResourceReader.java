@@ -0,0 +1,70 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Asynchronous variant of ResourceReader: every method returns immediately an
+ *               AsyncResult, that can be used to wait for the results, to register callbacks
+ *               or to cancel the request. The arguments have the same meaning of the ones of
+ *               ResourceReader. AsyncResourceReaderAdapter wraps a ResourceReader.
+ */
+public interface AsyncResourceReader {
+
+    /**
+     * Asynchronous variant of ResourceReader.getResources.
+     */
+    AsyncResult<Iterator<Resource>> getResources(Date from, boolean isSummary);
+
+    /**
+     * Asynchronous variant of ResourceReader.getResourcesByCategories.
+     */
+    AsyncResult<Iterator<Resource>> getResourcesByCategories(Date from,
+                                                             boolean isSummary,
+                                                             ResourceCategory... categories);
+
+    /**
+     * Asynchronous variant of ResourceReader.getResourcesByCategory.
+     */
+    AsyncResult<Iterator<Resource>> getResourcesByCategory(ResourceCategory category,
+                                                           Date from,
+                                                           boolean isSummary);
+
+    /**
+     * Asynchronous variant of ResourceReader.getResourcesByCategory.
+     */
+    AsyncResult<Iterator<Resource>> getResourcesByCategory(ResourceCategory category,
+                                                           String subCategory,
+                                                           String type,
+                                                           Date from,
+                                                           boolean isSummary);
+
+    /**
+     * Asynchronous variant of ResourceReader.getMostRecentResources.
+     */
+    AsyncResult<Iterator<Resource>> getMostRecentResources(ResourceCategory category,
+                                                           int mostRecentSize,
+                                                           boolean isSummary);
+
+    /**
+     * Asynchronous variant of ResourceReader.getMostRecentResources.
+     */
+    AsyncResult<Iterator<Resource>> getMostRecentResources(ResourceCategory category,
+                                                           String subCategory,
+                                                           String type,
+                                                           int mostRecentSize,
+                                                           boolean isSummary);
+
+    /**
+     * Asynchronous variant of ResourceReader.getResourcesById.
+     */
+    AsyncResult<Iterator<Resource>> getResourcesById(String... ids);
+
+}
@@ -0,0 +1,122 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: AsyncResourceReader executing the requests with a synchronous ResourceReader
+ *               through an AsyncRequestExecutor.
+ *
+ *  Usage:
+ *
+ *  AsyncResourceReader reader = new AsyncResourceReaderAdapter(syncReader, requests);
+ *  reader.getResourcesByCategory(FHIRResourceCategory.OBSERVATION, from, false)
+ *        .addCallback(new ResultCallback<Iterator<Resource>>() { ... });
+ *
+ */
+public class AsyncResourceReaderAdapter implements AsyncResourceReader {
+
+    private final ResourceReader reader;
+    private final AsyncRequestExecutor requests;
+
+    /**
+     *
+     * @param reader: the synchronous reader executing the requests.
+     * @param requests: the executor of the requests.
+     */
+    public AsyncResourceReaderAdapter(ResourceReader reader, AsyncRequestExecutor requests) {
+        if (reader == null || requests == null)
+            throw new IllegalArgumentException("Invalid arguments: the reader and the executor cannot be null.");
+
+        this.reader = reader;
+        this.requests = requests;
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getResources(final Date from, final boolean isSummary) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getResources(from, isSummary);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getResourcesByCategories(final Date from, final boolean isSummary,
+                                                                    final ResourceCategory... categories) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getResourcesByCategories(from, isSummary, categories);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getResourcesByCategory(final ResourceCategory category, final Date from,
+                                                                  final boolean isSummary) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getResourcesByCategory(category, from, isSummary);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getResourcesByCategory(final ResourceCategory category,
+                                                                  final String subCategory, final String type,
+                                                                  final Date from, final boolean isSummary) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getResourcesByCategory(category, subCategory, type, from, isSummary);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getMostRecentResources(final ResourceCategory category,
+                                                                  final int mostRecentSize,
+                                                                  final boolean isSummary) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getMostRecentResources(category, mostRecentSize, isSummary);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getMostRecentResources(final ResourceCategory category,
+                                                                  final String subCategory, final String type,
+                                                                  final int mostRecentSize,
+                                                                  final boolean isSummary) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getMostRecentResources(category, subCategory, type, mostRecentSize, isSummary);
+            }
+        });
+    }
+
+    @Override
+    public AsyncResult<Iterator<Resource>> getResourcesById(final String... ids) {
+        return requests.submit(new Callable<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> call() throws Exception {
+                return reader.getResourcesById(ids);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,23 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Asynchronous variant of ResourceWriter. AsyncResourceWriterAdapter wraps a
+ *               ResourceWriter.
+ */
+public interface AsyncResourceWriter {
+
+    /**
+     * Method used to sent a bundle of resources to a ResourceServer without waiting for
+     * the completion of the upload.
+     *
+     * @param healthData: bundle of data sent to the ResourceServer.
+     * @return the result of the request, completed when the data has been sent.
+     */
+    AsyncResult<Void> sendHealthData(Bundle healthData);
+
+}
@@ -0,0 +1,43 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.concurrent.Callable;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: AsyncResourceWriter executing the requests with a synchronous ResourceWriter
+ *               through an AsyncRequestExecutor.
+ */
+public class AsyncResourceWriterAdapter implements AsyncResourceWriter {
+
+    private final ResourceWriter writer;
+    private final AsyncRequestExecutor requests;
+
+    /**
+     *
+     * @param writer: the synchronous writer executing the requests.
+     * @param requests: the executor of the requests.
+     */
+    public AsyncResourceWriterAdapter(ResourceWriter writer, AsyncRequestExecutor requests) {
+        if (writer == null || requests == null)
+            throw new IllegalArgumentException("Invalid arguments: the writer and the executor cannot be null.");
+
+        this.writer = writer;
+        this.requests = requests;
+    }
+
+    @Override
+    public AsyncResult<Void> sendHealthData(final Bundle healthData) {
+        return requests.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                writer.sendHealthData(healthData);
+                return null;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,134 @@
+package eu.interopehrate.protocols.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Result of an asynchronous request. It is a Future, so the caller can wait for
+ *               the result or cancel the request, and it notifies the registered callbacks when
+ *               the request completes. The callbacks are invoked by the thread completing the
+ *               request, or by the thread registering them if the request is already completed;
+ *               an exception thrown by a callback does not prevent the others from being
+ *               invoked.
+ */
+public class AsyncResult<T> extends FutureTask<T> {
+
+    private final List<ResultCallback<? super T>> callbacks = new ArrayList<ResultCallback<? super T>>(2);
+    private boolean completed;
+    private volatile boolean timedOut;
+    private volatile Future<?> timeout;
+
+    AsyncResult(Callable<T> callable) {
+        super(callable);
+    }
+
+    /**
+     * Method used to register a callback notified when the request completes.
+     *
+     * @param callback: the callback to be registered.
+     * @return this instance.
+     */
+    public AsyncResult<T> addCallback(ResultCallback<? super T> callback) {
+        if (callback == null)
+            throw new IllegalArgumentException("Invalid argument: the callback cannot be null.");
+
+        synchronized (callbacks) {
+            if (!completed) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+
+        notify(callback);
+        return this;
+    }
+
+    /**
+     *
+     * @return true if the request has been cancelled because it did not complete in time.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    void setTimeout(Future<?> timeout) {
+        this.timeout = timeout;
+        if (isDone())
+            timeout.cancel(false);
+    }
+
+    /*
+     * Completes the request with a failure, used when it cannot be started
+     */
+    void fail(Throwable error) {
+        setException(error);
+    }
+
+    /*
+     * Cancels the request because it did not complete in time
+     */
+    void expire() {
+        timedOut = true;
+        if (!cancel(true) && !isCancelled())
+            timedOut = false;
+    }
+
+    @Override
+    protected void done() {
+        Future<?> currentTimeout = timeout;
+        if (currentTimeout != null)
+            currentTimeout.cancel(false);
+
+        List<ResultCallback<? super T>> toNotify;
+        synchronized (callbacks) {
+            completed = true;
+            toNotify = new ArrayList<ResultCallback<? super T>>(callbacks);
+            callbacks.clear();
+        }
+
+        for (ResultCallback<? super T> callback : toNotify)
+            notify(callback);
+    }
+
+    private void notify(ResultCallback<? super T> callback) {
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            invokeFailure(callback, e.getCause());
+            return;
+        } catch (CancellationException e) {
+            invokeFailure(callback, timedOut ? new TimeoutException("The request did not complete in time.") : e);
+            return;
+        } catch (InterruptedException e) {
+            // not possible, the request is already completed
+            Thread.currentThread().interrupt();
+            invokeFailure(callback, e);
+            return;
+        }
+
+        try {
+            callback.onSuccess(result);
+        } catch (RuntimeException e) {
+            // a faulty callback must not affect the others
+        }
+    }
+
+    private static void invokeFailure(ResultCallback<?> callback, Throwable error) {
+        try {
+            callback.onFailure(error);
+        } catch (RuntimeException e) {
+            // a faulty callback must not affect the others
+        }
+    }
+
+}
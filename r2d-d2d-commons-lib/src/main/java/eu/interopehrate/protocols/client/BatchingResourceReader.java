@@ -0,0 +1,326 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Decorator of a ResourceReader combining the concurrent invocations of
+ *               getResourcesById. The ids requested within a time window (starting with the
+ *               first request of a batch) are collected, de-duplicated and retrieved with a
+ *               single request to the delegate reader; the batch is sent before the end of the
+ *               window when it reaches the maximum number of ids. Every caller receives only
+ *               the resources it requested, matched by id, and in case of failure all the
+ *               callers of the batch receive the exception.
+ *
+ *               No thread is created: the first caller of a batch waits for the end of the
+ *               window and sends the request, the other callers wait for the results. The
+ *               other queries are forwarded to the delegate reader.
+ *
+ *  Usage:
+ *
+ *  ResourceReader reader = new BatchingResourceReader(remoteReader, 10, 100);
+ *  Iterator<Resource> it = reader.getResourcesById("Practitioner/p1");
+ *
+ */
+public class BatchingResourceReader implements ResourceReader {
+
+    public static final long DEFAULT_WINDOW = 10;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final ResourceReader delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+
+    // batch collecting the ids, null if there are no pending requests
+    private Batch current;
+    private long batchCount;
+    private long requestCount;
+    private long requestedIdCount;
+    private long sentIdCount;
+    private int largestBatchSize;
+
+    /**
+     *
+     * @param delegate: the reader executing the combined requests.
+     */
+    public BatchingResourceReader(ResourceReader delegate) {
+        this(delegate, DEFAULT_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     *
+     * @param delegate: the reader executing the combined requests.
+     * @param windowMillis: the time the first request of a batch waits for other requests.
+     * @param maxBatchSize: the maximum number of distinct ids of a batch.
+     */
+    public BatchingResourceReader(ResourceReader delegate, long windowMillis, int maxBatchSize) {
+        if (delegate == null)
+            throw new IllegalArgumentException("Invalid argument: the delegate reader cannot be null.");
+        if (windowMillis < 0 || maxBatchSize < 1)
+            throw new IllegalArgumentException("Invalid arguments: windowMillis cannot be negative and maxBatchSize must be positive.");
+
+        this.delegate = delegate;
+        this.windowNanos = windowMillis * 1000000L;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesById(String... ids) throws Exception {
+        if (ids == null || ids.length == 0)
+            return delegate.getResourcesById(ids);
+
+        Set<String> requested = new LinkedHashSet<String>(ids.length);
+        for (String id : ids) {
+            if (id != null)
+                requested.add(id);
+        }
+
+        Batch batch;
+        boolean leader = false;
+        synchronized (lock) {
+            requestCount++;
+            requestedIdCount += requested.size();
+
+            // a batch that would become too large is sent, the request starts a new one
+            if (current != null && !current.ids.containsAll(requested)
+                    && current.ids.size() + requested.size() > maxBatchSize)
+                close(current);
+
+            if (current == null) {
+                current = new Batch();
+                leader = true;
+            }
+            batch = current;
+            batch.ids.addAll(requested);
+            if (batch.ids.size() >= maxBatchSize)
+                close(batch);
+        }
+
+        if (leader)
+            send(batch);
+        else
+            batch.done.await();
+
+        if (batch.error != null)
+            throw batch.error;
+
+        return batch.select(requested);
+    }
+
+    @Override
+    public Iterator<Resource> getResources(Date from, boolean isSummary) throws Exception {
+        return delegate.getResources(from, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategories(Date from, boolean isSummary,
+                                                       ResourceCategory... categories) throws Exception {
+        return delegate.getResourcesByCategories(from, isSummary, categories);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, Date from,
+                                                     boolean isSummary) throws Exception {
+        return delegate.getResourcesByCategory(category, from, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, String subCategory, String type,
+                                                     Date from, boolean isSummary) throws Exception {
+        return delegate.getResourcesByCategory(category, subCategory, type, from, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, int mostRecentSize,
+                                                     boolean isSummary) throws Exception {
+        return delegate.getMostRecentResources(category, mostRecentSize, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, String subCategory, String type,
+                                                     int mostRecentSize, boolean isSummary) throws Exception {
+        return delegate.getMostRecentResources(category, subCategory, type, mostRecentSize, isSummary);
+    }
+
+    /**
+     *
+     * @return the number of combined requests sent to the delegate reader.
+     */
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    /**
+     *
+     * @return the number of invocations of getResourcesById.
+     */
+    public long getRequestCount() {
+        synchronized (lock) {
+            return requestCount;
+        }
+    }
+
+    /**
+     *
+     * @return the number of ids requested by the callers.
+     */
+    public long getRequestedIdCount() {
+        synchronized (lock) {
+            return requestedIdCount;
+        }
+    }
+
+    /**
+     *
+     * @return the number of distinct ids sent to the delegate reader.
+     */
+    public long getSentIdCount() {
+        synchronized (lock) {
+            return sentIdCount;
+        }
+    }
+
+    /**
+     *
+     * @return the average number of ids of a combined request.
+     */
+    public double getAverageBatchSize() {
+        synchronized (lock) {
+            return batchCount == 0 ? 0 : (double) sentIdCount / batchCount;
+        }
+    }
+
+    /**
+     *
+     * @return the largest number of ids of a combined request.
+     */
+    public int getLargestBatchSize() {
+        synchronized (lock) {
+            return largestBatchSize;
+        }
+    }
+
+    /*
+     * Closes a batch, no other ids can be added to it. Must be invoked holding the lock.
+     */
+    private void close(Batch batch) {
+        if (batch.closed)
+            return;
+
+        batch.closed = true;
+        if (current == batch)
+            current = null;
+
+        batchCount++;
+        sentIdCount += batch.ids.size();
+        largestBatchSize = Math.max(largestBatchSize, batch.ids.size());
+        lock.notifyAll();
+    }
+
+    /*
+     * Waits for the end of the window (or for the batch to be full) and sends the batch
+     */
+    private void send(Batch batch) throws Exception {
+        boolean interrupted = false;
+        synchronized (lock) {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            while (!batch.closed && remaining > 0) {
+                try {
+                    lock.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+                } catch (InterruptedException e) {
+                    // the batch is sent anyway, the other callers are waiting for it
+                    interrupted = true;
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            close(batch);
+        }
+
+        try {
+            Iterator<Resource> it = delegate.getResourcesById(batch.ids.toArray(new String[batch.ids.size()]));
+            if (it != null) {
+                while (it.hasNext())
+                    batch.index(it.next());
+            }
+        } catch (Exception e) {
+            batch.error = e;
+        } finally {
+            batch.done.countDown();
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * The ids of a combined request and its results, indexed by id.
+     */
+    private static final class Batch {
+        private final Set<String> ids = new LinkedHashSet<String>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        // "Type/id/_history/version", "Type/id" and "id" -> resource
+        private final Map<String, Resource> byVersion = new HashMap<String, Resource>();
+        private final Map<String, Resource> byKey = new HashMap<String, Resource>();
+        private final Map<String, Resource> byIdPart = new HashMap<String, Resource>();
+        private boolean closed;
+        private volatile Exception error;
+
+        private void index(Resource resource) {
+            if (resource == null || !resource.hasIdElement() || !resource.getIdElement().hasIdPart())
+                return;
+
+            String idPart = resource.getIdElement().getIdPart();
+            String key = resource.getResourceType().name() + "/" + idPart;
+            String version = resource.getIdElement().hasVersionIdPart()
+                    ? resource.getIdElement().getVersionIdPart()
+                    : (resource.hasMeta() && resource.getMeta().hasVersionId() ? resource.getMeta().getVersionId() : null);
+            if (version != null)
+                byVersion.put(key + "/_history/" + version, resource);
+            byKey.put(key, resource);
+            byIdPart.put(idPart, resource);
+        }
+
+        private Iterator<Resource> select(Set<String> requested) {
+            Set<Resource> added = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+            List<Resource> results = new ArrayList<Resource>(requested.size());
+            IdType id;
+            Resource r;
+            for (String s : requested) {
+                id = new IdType(s);
+                if (!id.hasResourceType())
+                    r = byIdPart.get(id.getIdPart());
+                else if (id.hasVersionIdPart())
+                    r = byVersion.get(id.getResourceType() + "/" + id.getIdPart() + "/_history/" + id.getVersionIdPart());
+                else
+                    r = byKey.get(id.getResourceType() + "/" + id.getIdPart());
+
+                if (r != null && added.add(r))
+                    results.add(r);
+            }
+
+            return results.iterator();
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Decorator of a ResourceReader caching the resources retrieved by id. The
+ *               cached resources are keyed by type and id and remember their version
+ *               (meta.versionId): getResourcesById serves the cached ones locally and
+ *               retrieves all the missing ones with a single request to the delegate reader.
+ *               A request for a specific version ("Type/id/_history/v") is a hit only if the
+ *               cached resource has that version.
+ *
+ *               The total weight of the cached resources is bounded, the least recently used
+ *               ones are evicted; by default every resource weighs 1, so the bound is the
+ *               number of resources. The resources returned by the other queries refresh the
+ *               cached ones having a different version, the summaries of a changed resource
+ *               evict it.
+ *
+ *               The cached resources are shared by all the callers, so they must not be
+ *               modified.
+ *
+ *  Usage:
+ *
+ *  CachingResourceReader reader = new CachingResourceReader(remoteReader, 1000);
+ *  Iterator<Resource> it = reader.getResourcesById("Practitioner/p1", "Organization/o1");
+ *
+ */
+public class CachingResourceReader implements ResourceReader {
+
+    public static final long DEFAULT_MAX_WEIGHT = 1000;
+
+    /**
+     * Weigher counting the number of resources.
+     */
+    public static final Weigher COUNT_WEIGHER = new Weigher() {
+        @Override
+        public int weigh(Resource resource) {
+            return 1;
+        }
+    };
+
+    /**
+     *  Description: Function computing the weight of a cached resource (for instance an
+     *               estimate of its size).
+     */
+    public interface Weigher {
+        /**
+         *
+         * @param resource: the resource to be cached.
+         * @return the weight of the resource, not negative.
+         */
+        int weigh(Resource resource);
+    }
+
+    private final ResourceReader delegate;
+    private final long maxWeight;
+    private final Weigher weigher;
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    // id without type -> key of the cached resource, for the requests not specifying the type
+    private final Map<String, String> aliases = new HashMap<String, String>();
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long requestCount;
+
+    /**
+     *
+     * @param delegate: the reader whose resources must be cached.
+     */
+    public CachingResourceReader(ResourceReader delegate) {
+        this(delegate, DEFAULT_MAX_WEIGHT, COUNT_WEIGHER);
+    }
+
+    /**
+     *
+     * @param delegate: the reader whose resources must be cached.
+     * @param maxResources: the maximum number of cached resources.
+     */
+    public CachingResourceReader(ResourceReader delegate, long maxResources) {
+        this(delegate, maxResources, COUNT_WEIGHER);
+    }
+
+    /**
+     *
+     * @param delegate: the reader whose resources must be cached.
+     * @param maxWeight: the maximum total weight of the cached resources.
+     * @param weigher: the function computing the weight of a resource.
+     */
+    public CachingResourceReader(ResourceReader delegate, long maxWeight, Weigher weigher) {
+        if (delegate == null || weigher == null)
+            throw new IllegalArgumentException("Invalid arguments: the delegate reader and the weigher cannot be null.");
+        if (maxWeight < 1)
+            throw new IllegalArgumentException("Invalid argument: maxWeight must be positive.");
+
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesById(String... ids) throws Exception {
+        if (ids == null || ids.length == 0)
+            return delegate.getResourcesById(ids);
+
+        // 1. looks for the requested resources in the cache
+        IdType[] requested = new IdType[ids.length];
+        Resource[] hits = new Resource[ids.length];
+        List<String> missing = new ArrayList<String>();
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == null)
+                    continue;
+
+                requested[i] = new IdType(ids[i]);
+                hits[i] = lookup(requested[i]);
+                if (hits[i] == null)
+                    missing.add(ids[i]);
+            }
+        }
+
+        if (missing.isEmpty())
+            return toIterator(hits);
+
+        // 2. retrieves all the missing resources with a single request
+        List<Resource> fetched = new ArrayList<Resource>(missing.size());
+        Iterator<Resource> it = delegate.getResourcesById(missing.toArray(new String[missing.size()]));
+        if (it != null) {
+            while (it.hasNext())
+                fetched.add(it.next());
+        }
+
+        Map<String, Resource> byKey = new HashMap<String, Resource>();
+        Map<String, Resource> byIdPart = new HashMap<String, Resource>();
+        for (Resource r : fetched) {
+            if (r != null && r.hasIdElement() && r.getIdElement().hasIdPart()) {
+                byKey.put(keyOf(r), r);
+                byIdPart.put(r.getIdElement().getIdPart(), r);
+            }
+        }
+
+        // 3. caches the retrieved resources and returns the results in the requested order
+        Set<Resource> added = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+        List<Resource> results = new ArrayList<Resource>(ids.length);
+        Resource r;
+        synchronized (this) {
+            requestCount++;
+            for (int i = 0; i < ids.length; i++) {
+                r = hits[i];
+                if (r == null && requested[i] != null) {
+                    r = requested[i].hasResourceType()
+                            ? byKey.get(requested[i].getResourceType() + "/" + requested[i].getIdPart())
+                            : byIdPart.get(requested[i].getIdPart());
+                    if (r != null)
+                        store(r, requested[i]);
+                }
+
+                if (r != null && added.add(r))
+                    results.add(r);
+            }
+        }
+
+        for (Resource f : fetched) {
+            if (f != null && added.add(f))
+                results.add(f);
+        }
+
+        return results.iterator();
+    }
+
+    @Override
+    public Iterator<Resource> getResources(Date from, boolean isSummary) throws Exception {
+        return refreshing(delegate.getResources(from, isSummary), isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategories(Date from, boolean isSummary,
+                                                       ResourceCategory... categories) throws Exception {
+        return refreshing(delegate.getResourcesByCategories(from, isSummary, categories), isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, Date from,
+                                                     boolean isSummary) throws Exception {
+        return refreshing(delegate.getResourcesByCategory(category, from, isSummary), isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, String subCategory, String type,
+                                                     Date from, boolean isSummary) throws Exception {
+        return refreshing(delegate.getResourcesByCategory(category, subCategory, type, from, isSummary), isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, int mostRecentSize,
+                                                     boolean isSummary) throws Exception {
+        return refreshing(delegate.getMostRecentResources(category, mostRecentSize, isSummary), isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, String subCategory, String type,
+                                                     int mostRecentSize, boolean isSummary) throws Exception {
+        return refreshing(delegate.getMostRecentResources(category, subCategory, type, mostRecentSize, isSummary),
+                isSummary);
+    }
+
+    /**
+     * Method used to remove a resource from the cache.
+     *
+     * @param id: the id of the resource ("Type/id").
+     */
+    public synchronized void invalidate(String id) {
+        if (id == null)
+            return;
+
+        IdType idType = new IdType(id);
+        String key = idType.hasResourceType()
+                ? idType.getResourceType() + "/" + idType.getIdPart()
+                : aliases.get(idType.getIdPart());
+        if (key != null)
+            remove(key);
+    }
+
+    /**
+     * Method used to remove all the cached resources.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        aliases.clear();
+        weight = 0;
+    }
+
+    /**
+     *
+     * @return the number of requested ids served by the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     *
+     * @return the number of requested ids retrieved from the delegate reader.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     *
+     * @return the ratio between the requested ids served by the cache and all the requested ids.
+     */
+    public synchronized double getHitRatio() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     *
+     * @return the number of requests forwarded to the delegate reader by getResourcesById.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     *
+     * @return the number of resources evicted because the cache was full.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     *
+     * @return the number of cached resources.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     *
+     * @return the total weight of the cached resources.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private Resource lookup(IdType id) {
+        String key = id.hasResourceType()
+                ? id.getResourceType() + "/" + id.getIdPart()
+                : aliases.get(id.getIdPart());
+        CacheEntry entry = key == null ? null : cache.get(key);
+        if (entry == null || (id.hasVersionIdPart() && !id.getVersionIdPart().equals(entry.version))) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.resource;
+    }
+
+    /*
+     * Caches a resource retrieved by id. A resource requested with a specific version does
+     * not replace a cached resource with a more recent version.
+     */
+    private void store(Resource resource, IdType requested) {
+        String key = keyOf(resource);
+        String version = versionOf(resource);
+        CacheEntry previous = cache.get(key);
+        if (previous != null && requested.hasVersionIdPart() && !isNewer(version, previous.version))
+            return;
+
+        put(key, resource, version);
+        if (!requested.hasResourceType())
+            aliases.put(resource.getIdElement().getIdPart(), key);
+    }
+
+    private void put(String key, Resource resource, String version) {
+        int w = weigher.weigh(resource);
+        CacheEntry previous = cache.remove(key);
+        if (previous != null)
+            weight -= previous.weight;
+        if (w > maxWeight) {
+            removeAliases(key);
+            return;
+        }
+
+        cache.put(key, new CacheEntry(resource, version, w));
+        weight += w;
+
+        // evicts the least recently used resources
+        Map.Entry<String, CacheEntry> eldest;
+        for (Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator(); weight > maxWeight && it.hasNext(); ) {
+            eldest = it.next();
+            it.remove();
+            weight -= eldest.getValue().weight;
+            removeAliases(eldest.getKey());
+            evictionCount++;
+        }
+    }
+
+    private void remove(String key) {
+        CacheEntry entry = cache.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+            removeAliases(key);
+        }
+    }
+
+    private void removeAliases(String key) {
+        String idPart = key.substring(key.indexOf('/') + 1);
+        if (key.equals(aliases.get(idPart)))
+            aliases.remove(idPart);
+    }
+
+    /*
+     * Updates a cached resource returned by a query with a different version. A summary
+     * does not replace the cached resource but evicts it if it changed.
+     */
+    private synchronized void refresh(Resource resource, boolean isSummary) {
+        if (resource == null || !resource.hasIdElement() || !resource.getIdElement().hasIdPart())
+            return;
+
+        String key = keyOf(resource);
+        CacheEntry entry = cache.get(key);
+        if (entry == null || entry.resource == resource)
+            return;
+
+        String version = versionOf(resource);
+        if (version != null && version.equals(entry.version))
+            return;
+
+        if (isSummary)
+            remove(key);
+        else
+            put(key, resource, version);
+    }
+
+    private Iterator<Resource> refreshing(final Iterator<Resource> it, final boolean isSummary) {
+        if (it == null)
+            return null;
+
+        return new Iterator<Resource>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Resource next() {
+                Resource r = it.next();
+                refresh(r, isSummary);
+                return r;
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+            }
+        };
+    }
+
+    private static Iterator<Resource> toIterator(Resource[] resources) {
+        Set<Resource> added = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+        List<Resource> results = new ArrayList<Resource>(resources.length);
+        for (Resource r : resources) {
+            if (r != null && added.add(r))
+                results.add(r);
+        }
+
+        return results.iterator();
+    }
+
+    private static String keyOf(Resource resource) {
+        return resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
+    }
+
+    private static String versionOf(Resource resource) {
+        if (resource.getIdElement().hasVersionIdPart())
+            return resource.getIdElement().getVersionIdPart();
+
+        return resource.hasMeta() && resource.getMeta().hasVersionId() ? resource.getMeta().getVersionId() : null;
+    }
+
+    /*
+     * Numeric versions are compared by value, other versions are not comparable.
+     */
+    private static boolean isNewer(String version, String cachedVersion) {
+        if (version == null || cachedVersion == null)
+            return cachedVersion == null;
+
+        try {
+            return Long.parseLong(version) > Long.parseLong(cachedVersion);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final Resource resource;
+        private final String version;
+        private final int weight;
+
+        private CacheEntry(Resource resource, String version, int weight) {
+            this.resource = resource;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package eu.interopehrate.protocols.client;
+
+import eu.interopehrate.protocols.common.BundleChunk;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Interface of the channel used by ChunkedResourceWriter to send the chunks of
+ *               a Bundle. The acknowledgement returned by the receiver is the number of
+ *               consecutive chunks of the transfer it holds, that is the sequence number of the
+ *               next chunk it expects.
+ */
+public interface ChunkTransport {
+
+    /**
+     * Method used to send a chunk to the receiver.
+     *
+     * @param chunk: the chunk to be sent.
+     * @return the sequence number of the next chunk expected by the receiver.
+     * @throws Exception in case of failure
+     */
+    int sendChunk(BundleChunk chunk) throws Exception;
+
+    /**
+     * Method used to ask the receiver the progress of a transfer, to resume it after a failure.
+     *
+     * @param transferId: the id of the transfer.
+     * @return the sequence number of the next chunk expected by the receiver, 0 if the
+     *         transfer is unknown.
+     * @throws Exception in case of failure
+     */
+    int getProgress(String transferId) throws Exception;
+
+}
@@ -0,0 +1,190 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import ca.uhn.fhir.context.FhirContext;
+import eu.interopehrate.protocols.codec.BundleCodec;
+import eu.interopehrate.protocols.codec.JsonBundleCodec;
+import eu.interopehrate.protocols.codec.ParserPool;
+import eu.interopehrate.protocols.common.BundleChunk;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: ResourceWriter sending a Bundle in chunks, so a large Bundle sent over an
+ *               unreliable link does not have to be sent again from scratch after a failure.
+ *               The Bundle is encoded with a BundleCodec (JSON by default, the receiver must
+ *               use the same codec) and split in chunks of at most chunkSize bytes, sent in order through a ChunkTransport. When a chunk cannot be sent,
+ *               or the receiver does not acknowledge it, the writer waits retryDelay, asks the
+ *               receiver the progress of the transfer and resumes from the first chunk not
+ *               acknowledged; the transfer fails after maxAttempts consecutive failures.
+ *
+ *               The receiver side is ChunkReassembler, that rebuilds the Bundle and forwards
+ *               it to a ResourceServerListener.
+ *
+ *  Usage:
+ *
+ *  ResourceWriter writer = new ChunkedResourceWriter(bluetoothTransport, FhirContext.forR4());
+ *  writer.sendHealthData(aLargeFhirBundle);
+ *
+ */
+public class ChunkedResourceWriter implements ResourceWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_RETRY_DELAY = 500;
+
+    private final ChunkTransport transport;
+    private final BundleCodec codec;
+    private final int chunkSize;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+
+    private long sentChunkCount;
+    private long resentChunkCount;
+    private long resumeCount;
+
+    /**
+     *
+     * @param transport: the channel used to send the chunks.
+     * @param context: the context used to serialize the Bundles.
+     */
+    public ChunkedResourceWriter(ChunkTransport transport, FhirContext context) {
+        this(transport, context, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     *
+     * @param transport: the channel used to send the chunks.
+     * @param context: the context used to serialize the Bundles.
+     * @param chunkSize: the maximum number of bytes of a chunk.
+     * @param maxAttempts: the number of consecutive failures after which the transfer fails.
+     * @param retryDelayMillis: the time waited before resuming the transfer after a failure.
+     */
+    public ChunkedResourceWriter(ChunkTransport transport, FhirContext context, int chunkSize,
+                                 int maxAttempts, long retryDelayMillis) {
+        this(transport, new JsonBundleCodec(new ParserPool(context)), chunkSize, maxAttempts, retryDelayMillis);
+    }
+
+    /**
+     *
+     * @param transport: the channel used to send the chunks.
+     * @param codec: the codec used to encode the Bundles.
+     * @param chunkSize: the maximum number of bytes of a chunk.
+     * @param maxAttempts: the number of consecutive failures after which the transfer fails.
+     * @param retryDelayMillis: the time waited before resuming the transfer after a failure.
+     */
+    public ChunkedResourceWriter(ChunkTransport transport, BundleCodec codec, int chunkSize,
+                                 int maxAttempts, long retryDelayMillis) {
+        if (transport == null || codec == null)
+            throw new IllegalArgumentException("Invalid arguments: the transport and the codec cannot be null.");
+        if (chunkSize < 1 || maxAttempts < 1 || retryDelayMillis < 0)
+            throw new IllegalArgumentException("Invalid arguments: chunkSize and maxAttempts must be positive and retryDelayMillis cannot be negative.");
+
+        this.transport = transport;
+        this.codec = codec;
+        this.chunkSize = chunkSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    @Override
+    public void sendHealthData(Bundle healthData) throws Exception {
+        if (healthData == null)
+            throw new IllegalArgumentException("Invalid argument: the bundle cannot be null.");
+
+        send(UUID.randomUUID().toString(), codec.encode(healthData));
+    }
+
+    /*
+     * Sends the chunks of the data, resuming from the progress of the receiver after a failure
+     */
+    private void send(String transferId, byte[] data) throws Exception {
+        int totalChunks = Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+        int next = 0;
+        int attempted = 0;
+        int failures = 0;
+        Exception lastError = null;
+        BundleChunk chunk;
+        int from;
+        int ack;
+        while (next < totalChunks) {
+            from = next * chunkSize;
+            chunk = new BundleChunk(transferId, next, totalChunks,
+                    Arrays.copyOfRange(data, from, Math.min(data.length, from + chunkSize)));
+            try {
+                countSent(next < attempted);
+                attempted = Math.max(attempted, next + 1);
+                ack = transport.sendChunk(chunk);
+                if (ack > next) {
+                    next = ack;
+                    failures = 0;
+                    continue;
+                }
+                lastError = new IOException("Chunk not acknowledged: " + chunk);
+            } catch (Exception e) {
+                lastError = e;
+            }
+
+            if (++failures >= maxAttempts)
+                throw lastError;
+
+            next = resume(transferId, next);
+        }
+    }
+
+    /*
+     * Returns the chunk from which the transfer must be resumed
+     */
+    private int resume(String transferId, int next) throws InterruptedException {
+        if (retryDelayMillis > 0)
+            Thread.sleep(retryDelayMillis);
+
+        synchronized (this) {
+            resumeCount++;
+        }
+
+        try {
+            return transport.getProgress(transferId);
+        } catch (Exception e) {
+            // the chunk is sent again, the receiver ignores the ones it already holds
+            return next;
+        }
+    }
+
+    private synchronized void countSent(boolean resent) {
+        sentChunkCount++;
+        if (resent)
+            resentChunkCount++;
+    }
+
+    /**
+     *
+     * @return the number of chunks sent, including the ones sent again.
+     */
+    public synchronized long getSentChunkCount() {
+        return sentChunkCount;
+    }
+
+    /**
+     *
+     * @return the number of chunks sent again because not acknowledged.
+     */
+    public synchronized long getResentChunkCount() {
+        return resentChunkCount;
+    }
+
+    /**
+     *
+     * @return the number of times a transfer has been resumed after a failure.
+     */
+    public synchronized long getResumeCount() {
+        return resumeCount;
+    }
+
+}
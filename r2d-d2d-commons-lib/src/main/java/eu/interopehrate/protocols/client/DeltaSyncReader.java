@@ -0,0 +1,32 @@
+package eu.interopehrate.protocols.client;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Interface of a local service for requesting only the Resources created or
+ *               changed since a previous request.
+ *
+ *  Usage:
+ *
+ *  SyncResult result = reader.getChanges(null, false);       // first visit, all the resources
+ *  String token = result.getSyncToken();
+ *  ...
+ *  result = reader.getChanges(token, false);                 // only the changes
+ *
+ */
+public interface DeltaSyncReader {
+
+    /**
+     * Method used to retrieve the resources created or changed since the state identified
+     * by a sync token.
+     *
+     * @param syncToken: the token returned by the previous request, null to retrieve all the resources.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @return the changed resources and the token to be used in the next request.
+     * @throws Exception in case of failure
+     */
+    SyncResult getChanges(String syncToken, boolean isSummary) throws Exception;
+
+}
@@ -0,0 +1,24 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Loader of a page of results, used by PagedResourceIterator.
+ */
+public interface PageLoader {
+
+    /**
+     * Method invoked to fetch and parse a page of results.
+     *
+     * @param offset: the number of results preceding the page.
+     * @param count: the maximum number of results of the page.
+     * @return the Bundle containing the results of the page, a Bundle with less than count
+     *         entries (or null) if it is the last page.
+     * @throws Exception in case of failure
+     */
+    Bundle loadPage(int offset, int count) throws Exception;
+
+}
@@ -0,0 +1,212 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Iterator over results loaded a page at a time: a page is fetched only when
+ *               the consumer reaches the end of the previous one, so the first results are
+ *               available as soon as the first page arrives and at most one page is kept in
+ *               memory. When an executor is provided, the next page is fetched in background
+ *               while the consumer reads the current one (prefetch one ahead), so at most two
+ *               pages are kept in memory.
+ *
+ *               A failure loading a page is thrown by hasNext/next as a PageLoadingException.
+ *               Instances are not thread safe.
+ *
+ *  Usage:
+ *
+ *  PagedResourceIterator it = new PagedResourceIterator(loader, 20, -1, executor);
+ *  while (it.hasNext())
+ *      show(it.next());
+ *
+ */
+public class PagedResourceIterator implements Iterator<Resource>, Closeable {
+
+    private final PageLoader loader;
+    private final int pageSize;
+    private final int maxResults;
+    private final Executor executor;
+
+    private List<Resource> page = Collections.emptyList();
+    private int index;
+    // offset of the next page to be loaded
+    private int offset;
+    private boolean lastPage;
+    private FutureTask<Bundle> prefetch;
+
+    /**
+     *
+     * @param loader: the loader of the pages.
+     * @param pageSize: the number of results of a page.
+     * @param maxResults: the maximum number of results, a negative value for no limit.
+     * @param executor: the executor used to prefetch the next page, null to disable prefetching.
+     */
+    public PagedResourceIterator(PageLoader loader, int pageSize, int maxResults, Executor executor) {
+        if (loader == null)
+            throw new IllegalArgumentException("Invalid argument: the loader cannot be null.");
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Invalid argument: the page size must be positive.");
+
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.maxResults = maxResults;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index >= page.size()) {
+            if (lastPage)
+                return false;
+
+            try {
+                advance();
+            } catch (Exception e) {
+                close();
+                if (e instanceof RuntimeException)
+                    throw (RuntimeException) e;
+                throw new PageLoadingException(e);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Resource next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        return page.get(index++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("The results are read only.");
+    }
+
+    /**
+     * Method used to stop the iteration, cancelling the page being prefetched.
+     */
+    @Override
+    public void close() {
+        lastPage = true;
+        page = Collections.emptyList();
+        if (prefetch != null) {
+            prefetch.cancel(true);
+            prefetch = null;
+        }
+    }
+
+    /**
+     * Method used to load the first page, so that a failure is reported as a checked
+     * exception by the method creating the iterator rather than by hasNext.
+     *
+     * @throws Exception in case of failure
+     */
+    public void loadFirstPage() throws Exception {
+        if (offset == 0 && !lastPage)
+            advance();
+    }
+
+    /*
+     * Replaces the current page with the next one
+     */
+    private void advance() throws Exception {
+        int count = nextCount();
+        if (count == 0) {
+            close();
+            return;
+        }
+
+        Bundle bundle;
+        if (prefetch != null) {
+            FutureTask<Bundle> task = prefetch;
+            prefetch = null;
+            bundle = await(task);
+        } else {
+            bundle = loader.loadPage(offset, count);
+        }
+
+        page = resourcesOf(bundle);
+        index = 0;
+        offset += count;
+        lastPage = bundle == null || bundle.getEntry().size() < count || nextCount() == 0;
+
+        if (!lastPage && executor != null) {
+            final int nextOffset = offset;
+            final int nextCount = nextCount();
+            prefetch = new FutureTask<Bundle>(new Callable<Bundle>() {
+                @Override
+                public Bundle call() throws Exception {
+                    return loader.loadPage(nextOffset, nextCount);
+                }
+            });
+            executor.execute(prefetch);
+        }
+    }
+
+    private int nextCount() {
+        if (maxResults < 0)
+            return pageSize;
+
+        return Math.max(0, Math.min(pageSize, maxResults - offset));
+    }
+
+    private static Bundle await(FutureTask<Bundle> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private static List<Resource> resourcesOf(Bundle bundle) {
+        if (bundle == null)
+            return Collections.emptyList();
+
+        List<Resource> resources = new ArrayList<Resource>(bundle.getEntry().size());
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.getResource() != null)
+                resources.add(entry.getResource());
+        }
+
+        return resources;
+    }
+
+    /**
+     * Unchecked exception thrown by hasNext and next when a page cannot be loaded.
+     */
+    public static class PageLoadingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public PageLoadingException(Throwable cause) {
+            super("Unable to load the next page of results: " + cause.getMessage(), cause);
+        }
+    }
+
+}
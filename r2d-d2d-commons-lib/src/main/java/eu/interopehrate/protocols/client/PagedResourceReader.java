@@ -0,0 +1,128 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Base class of the ResourceReaders able to retrieve the results of a request
+ *               a page at a time. The returned Iterators are PagedResourceIterators: the first
+ *               page is loaded by the method handling the request, the following ones when the
+ *               consumer advances (or in background, one page ahead, if a prefetch executor is
+ *               provided). Subclasses only implement loadPage.
+ *
+ *  Usage:
+ *
+ *  ResourceReader reader = new PagedResourceReader(20, executor) {
+ *      protected Bundle loadPage(ResourceQuery query, int offset, int count) throws Exception {
+ *          return fetchAndParse(query, offset, count);
+ *      }
+ *  };
+ *
+ */
+public abstract class PagedResourceReader implements ResourceReader {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final int pageSize;
+    private final Executor prefetchExecutor;
+
+    protected PagedResourceReader() {
+        this(DEFAULT_PAGE_SIZE, null);
+    }
+
+    /**
+     *
+     * @param pageSize: the number of resources of a page.
+     * @param prefetchExecutor: the executor used to prefetch the next page, null to disable prefetching.
+     */
+    protected PagedResourceReader(int pageSize, Executor prefetchExecutor) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Invalid argument: the page size must be positive.");
+
+        this.pageSize = pageSize;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Method invoked to fetch and parse a page of the results of a request.
+     *
+     * @param query: the request.
+     * @param offset: the number of results preceding the page.
+     * @param count: the maximum number of results of the page.
+     * @return the Bundle containing the results of the page, a Bundle with less than count
+     *         entries (or null) if it is the last page.
+     * @throws Exception in case of failure
+     */
+    protected abstract Bundle loadPage(ResourceQuery query, int offset, int count) throws Exception;
+
+    @Override
+    public Iterator<Resource> getResources(Date from, boolean isSummary) throws Exception {
+        return iterate(ResourceQuery.byDate(from, isSummary), -1);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategories(Date from, boolean isSummary,
+                                                       ResourceCategory... categories) throws Exception {
+        return iterate(ResourceQuery.byCategories(from, isSummary, categories), -1);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, Date from,
+                                                     boolean isSummary) throws Exception {
+        return getResourcesByCategory(category, null, null, from, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesByCategory(ResourceCategory category, String subCategory, String type,
+                                                     Date from, boolean isSummary) throws Exception {
+        return iterate(ResourceQuery.byCategory(category, subCategory, type, from, isSummary), -1);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, int mostRecentSize,
+                                                     boolean isSummary) throws Exception {
+        return getMostRecentResources(category, null, null, mostRecentSize, isSummary);
+    }
+
+    @Override
+    public Iterator<Resource> getMostRecentResources(ResourceCategory category, String subCategory, String type,
+                                                     int mostRecentSize, boolean isSummary) throws Exception {
+        return iterate(ResourceQuery.mostRecent(category, subCategory, type, mostRecentSize, isSummary),
+                Math.max(0, mostRecentSize));
+    }
+
+    @Override
+    public Iterator<Resource> getResourcesById(String... ids) throws Exception {
+        return iterate(ResourceQuery.byIds(ids), -1);
+    }
+
+    /**
+     *
+     * @return the number of resources of a page.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    private PagedResourceIterator iterate(final ResourceQuery query, int maxResults) throws Exception {
+        PagedResourceIterator iterator = new PagedResourceIterator(new PageLoader() {
+            @Override
+            public Bundle loadPage(int offset, int count) throws Exception {
+                return PagedResourceReader.this.loadPage(query, offset, count);
+            }
+        }, pageSize, maxResults, prefetchExecutor);
+        iterator.loadFirstPage();
+
+        return iterator;
+    }
+
+}
@@ -0,0 +1,221 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import eu.interopehrate.protocols.common.DigestProvider;
+import eu.interopehrate.protocols.common.FHIRResourceCategory;
+import eu.interopehrate.protocols.common.ResourceClassifier;
+import eu.interopehrate.protocols.common.ResourceDigest;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Decorator of a ResourceWriter sending to the peer only the resources it does
+ *               not hold yet. Before sending a Bundle the digest of the categories of its
+ *               resources is requested to the peer, and the resources whose version is in the
+ *               digest are removed from the Bundle (the provided Bundle is not modified). The
+ *               resources without id or version are always sent; if the digest cannot be
+ *               retrieved the whole Bundle is sent, and if the peer holds all the resources
+ *               nothing is sent.
+ *
+ *               Only the Bundles of type collection, transaction and batch are reconciled: the
+ *               other Bundles (a document, whose first entry must be the Composition referencing
+ *               the other entries, or a message) are valid only as a whole, so they are always
+ *               sent entirely.
+ *
+ *               When a FhirContext is provided the resources are also measured (in JSON), to
+ *               report the bytes saved; measuring costs an encoding of every resource, so it
+ *               should be enabled only while tuning.
+ *
+ *  Usage:
+ *
+ *  ResourceWriter writer = new ReconcilingResourceWriter(d2dWriter, peerDigestProvider);
+ *  writer.sendHealthData(aFhirBundle);
+ *
+ */
+public class ReconcilingResourceWriter implements ResourceWriter {
+
+    private static final Set<Bundle.BundleType> RECONCILED_TYPES = EnumSet.of(
+            Bundle.BundleType.COLLECTION, Bundle.BundleType.TRANSACTION, Bundle.BundleType.BATCH);
+
+    private final ResourceWriter delegate;
+    private final DigestProvider peer;
+    private final IParser parser;
+
+    private long sentResourceCount;
+    private long skippedResourceCount;
+    private long sentBytes;
+    private long skippedBytes;
+    private long digestBytes;
+    private long digestFailureCount;
+
+    /**
+     *
+     * @param delegate: the writer sending the resources to the peer.
+     * @param peer: the provider of the digest of the resources held by the peer.
+     */
+    public ReconcilingResourceWriter(ResourceWriter delegate, DigestProvider peer) {
+        this(delegate, peer, null);
+    }
+
+    /**
+     *
+     * @param delegate: the writer sending the resources to the peer.
+     * @param peer: the provider of the digest of the resources held by the peer.
+     * @param measuringContext: the context used to measure the resources, null to not measure them.
+     */
+    public ReconcilingResourceWriter(ResourceWriter delegate, DigestProvider peer, FhirContext measuringContext) {
+        if (delegate == null || peer == null)
+            throw new IllegalArgumentException("Invalid arguments: the delegate writer and the peer cannot be null.");
+
+        this.delegate = delegate;
+        this.peer = peer;
+        this.parser = measuringContext == null ? null : measuringContext.newJsonParser();
+    }
+
+    @Override
+    public void sendHealthData(Bundle healthData) throws Exception {
+        if (healthData == null) {
+            delegate.sendHealthData(healthData);
+            return;
+        }
+
+        // 1. retrieves the digest of the categories of the resources to be sent
+        Set<FHIRResourceCategory> categories = EnumSet.noneOf(FHIRResourceCategory.class);
+        FHIRResourceCategory category;
+        // documents and messages are valid only as a whole
+        if (RECONCILED_TYPES.contains(healthData.getType())) {
+            for (Bundle.BundleEntryComponent entry : healthData.getEntry()) {
+                category = ResourceClassifier.getFHIRCategory(entry.getResource());
+                if (category != null)
+                    categories.add(category);
+            }
+        }
+
+        ResourceDigest digest = null;
+        if (!categories.isEmpty()) {
+            try {
+                digest = peer.getDigest(categories);
+                synchronized (this) {
+                    digestBytes += digest.toByteArray().length;
+                }
+            } catch (Exception e) {
+                // reconciliation is an optimization, the whole Bundle is sent
+                synchronized (this) {
+                    digestFailureCount++;
+                }
+            }
+        }
+
+        // 2. removes the resources held by the peer
+        Bundle missing = healthData;
+        int skipped = 0;
+        long skippedSize = 0;
+        if (digest != null) {
+            missing = new Bundle();
+            missing.setIdElement(healthData.getIdElement());
+            missing.setMeta(healthData.getMeta());
+            missing.setIdentifier(healthData.getIdentifier());
+            missing.setType(healthData.getType());
+            missing.setTimestampElement(healthData.getTimestampElement());
+            Resource resource;
+            for (Bundle.BundleEntryComponent entry : healthData.getEntry()) {
+                resource = entry.getResource();
+                if (resource != null && digest.contains(resource)) {
+                    skipped++;
+                    skippedSize += sizeOf(resource);
+                } else {
+                    missing.addEntry(entry);
+                }
+            }
+        }
+
+        long sentSize = 0;
+        for (Bundle.BundleEntryComponent entry : missing.getEntry())
+            sentSize += sizeOf(entry.getResource());
+
+        // 3. sends the missing resources
+        if (!missing.getEntry().isEmpty() || skipped == 0)
+            delegate.sendHealthData(missing);
+
+        synchronized (this) {
+            sentResourceCount += missing.getEntry().size();
+            skippedResourceCount += skipped;
+            sentBytes += sentSize;
+            skippedBytes += skippedSize;
+        }
+    }
+
+    /**
+     *
+     * @return the number of resources sent to the peer.
+     */
+    public synchronized long getSentResourceCount() {
+        return sentResourceCount;
+    }
+
+    /**
+     *
+     * @return the number of resources not sent because held by the peer.
+     */
+    public synchronized long getSkippedResourceCount() {
+        return skippedResourceCount;
+    }
+
+    /**
+     *
+     * @return the size (in JSON) of the resources sent, 0 if the resources are not measured.
+     */
+    public synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     *
+     * @return the size (in JSON) of the resources not sent, 0 if the resources are not measured.
+     */
+    public synchronized long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     *
+     * @return the size of the digests received from the peer.
+     */
+    public synchronized long getDigestBytes() {
+        return digestBytes;
+    }
+
+    /**
+     *
+     * @return the bytes not sent minus the bytes of the digests, 0 if the resources are not measured.
+     */
+    public synchronized long getBytesSaved() {
+        return parser == null ? 0 : skippedBytes - digestBytes;
+    }
+
+    /**
+     *
+     * @return the number of Bundles sent entirely because the digest could not be retrieved.
+     */
+    public synchronized long getDigestFailureCount() {
+        return digestFailureCount;
+    }
+
+    private long sizeOf(Resource resource) {
+        if (parser == null || resource == null)
+            return 0;
+
+        synchronized (parser) {
+            return parser.encodeResourceToString(resource).length();
+        }
+    }
+
+}
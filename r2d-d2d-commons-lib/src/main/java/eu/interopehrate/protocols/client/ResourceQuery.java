@@ -0,0 +1,166 @@
+package eu.interopehrate.protocols.client;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Immutable description of a request done through a ResourceReader: the kind
+ *               of request (the method of ResourceReader) and its arguments. Used by the
+ *               implementations of ResourceReader that need to handle the requests as values,
+ *               for instance to load them a page at a time. Two queries with the same
+ *               arguments are equal.
+ */
+public final class ResourceQuery {
+
+    /**
+     * The method of ResourceReader the query corresponds to.
+     */
+    public enum Kind {
+        BY_IDS,
+        BY_DATE,
+        BY_CATEGORIES,
+        BY_CATEGORY,
+        MOST_RECENT
+    }
+
+    private final Kind kind;
+    private final String[] ids;
+    private final Long from;
+    private final boolean isSummary;
+    private final ResourceCategory[] categories;
+    private final String subCategory;
+    private final String type;
+    private final int mostRecentSize;
+    private final int hash;
+
+    private ResourceQuery(Kind kind, String[] ids, Date from, boolean isSummary, ResourceCategory[] categories,
+                          String subCategory, String type, int mostRecentSize) {
+        this.kind = kind;
+        this.ids = ids == null ? new String[0] : ids.clone();
+        this.from = from == null ? null : from.getTime();
+        this.isSummary = isSummary;
+        this.categories = categories == null ? new ResourceCategory[0] : categories.clone();
+        this.subCategory = subCategory;
+        this.type = type;
+        this.mostRecentSize = mostRecentSize;
+        this.hash = Arrays.hashCode(new Object[] {kind, Arrays.hashCode(this.ids), this.from, isSummary,
+                Arrays.hashCode(this.categories), subCategory, type, mostRecentSize});
+    }
+
+    /**
+     * Query corresponding to ResourceReader.getResourcesById.
+     */
+    public static ResourceQuery byIds(String... ids) {
+        return new ResourceQuery(Kind.BY_IDS, ids, null, false, null, null, null, -1);
+    }
+
+    /**
+     * Query corresponding to ResourceReader.getResources.
+     */
+    public static ResourceQuery byDate(Date from, boolean isSummary) {
+        return new ResourceQuery(Kind.BY_DATE, null, from, isSummary, null, null, null, -1);
+    }
+
+    /**
+     * Query corresponding to ResourceReader.getResourcesByCategories.
+     */
+    public static ResourceQuery byCategories(Date from, boolean isSummary, ResourceCategory... categories) {
+        return new ResourceQuery(Kind.BY_CATEGORIES, null, from, isSummary, categories, null, null, -1);
+    }
+
+    /**
+     * Query corresponding to ResourceReader.getResourcesByCategory.
+     */
+    public static ResourceQuery byCategory(ResourceCategory category, String subCategory, String type,
+                                           Date from, boolean isSummary) {
+        return new ResourceQuery(Kind.BY_CATEGORY, null, from, isSummary, new ResourceCategory[] {category},
+                subCategory, type, -1);
+    }
+
+    /**
+     * Query corresponding to ResourceReader.getMostRecentResources.
+     */
+    public static ResourceQuery mostRecent(ResourceCategory category, String subCategory, String type,
+                                           int mostRecentSize, boolean isSummary) {
+        return new ResourceQuery(Kind.MOST_RECENT, null, null, isSummary, new ResourceCategory[] {category},
+                subCategory, type, mostRecentSize);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String[] getIds() {
+        return ids.clone();
+    }
+
+    public Date getFrom() {
+        return from == null ? null : new Date(from);
+    }
+
+    public boolean isSummary() {
+        return isSummary;
+    }
+
+    public ResourceCategory[] getCategories() {
+        return categories.clone();
+    }
+
+    /**
+     *
+     * @return the category of a BY_CATEGORY or MOST_RECENT query, null for the other kinds.
+     */
+    public ResourceCategory getCategory() {
+        return kind == Kind.BY_CATEGORY || kind == Kind.MOST_RECENT ? categories[0] : null;
+    }
+
+    public String getSubCategory() {
+        return subCategory;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     *
+     * @return the number of resources requested by a MOST_RECENT query, -1 for the other kinds.
+     */
+    public int getMostRecentSize() {
+        return mostRecentSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ResourceQuery))
+            return false;
+
+        ResourceQuery q = (ResourceQuery) o;
+        return hash == q.hash && kind == q.kind && isSummary == q.isSummary
+                && mostRecentSize == q.mostRecentSize
+                && (from == null ? q.from == null : from.equals(q.from))
+                && (subCategory == null ? q.subCategory == null : subCategory.equals(q.subCategory))
+                && (type == null ? q.type == null : type.equals(q.type))
+                && Arrays.equals(ids, q.ids) && Arrays.equals(categories, q.categories);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return kind + "(ids=" + Arrays.toString(ids) + ", from=" + from + ", isSummary=" + isSummary
+                + ", categories=" + Arrays.toString(categories) + ", subCategory=" + subCategory
+                + ", type=" + type + ", mostRecentSize=" + mostRecentSize + ")";
+    }
+
+}
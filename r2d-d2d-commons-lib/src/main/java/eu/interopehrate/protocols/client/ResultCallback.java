@@ -0,0 +1,26 @@
+package eu.interopehrate.protocols.client;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Callback notified when an asynchronous request completes.
+ */
+public interface ResultCallback<T> {
+
+    /**
+     * Method invoked when the request completes successfully.
+     *
+     * @param result: the result of the request.
+     */
+    void onSuccess(T result);
+
+    /**
+     * Method invoked when the request fails, is cancelled (CancellationException) or does
+     * not complete in time (TimeoutException).
+     *
+     * @param error: the cause of the failure.
+     */
+    void onFailure(Throwable error);
+
+}
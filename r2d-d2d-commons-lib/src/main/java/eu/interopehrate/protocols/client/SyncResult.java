@@ -0,0 +1,84 @@
+package eu.interopehrate.protocols.client;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import eu.interopehrate.protocols.common.SyncTokens;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Result of a delta synchronization: the changed resources, the token to be
+ *               used in the next request and the flag telling if all the resources have been
+ *               returned (so the client must replace its copy of the data).
+ */
+public final class SyncResult {
+
+    private final Iterator<Resource> resources;
+    private final String syncToken;
+    private final boolean fullSync;
+
+    /**
+     *
+     * @param resources: the changed resources.
+     * @param syncToken: the token to be used in the next request.
+     * @param fullSync: true if all the resources have been returned.
+     */
+    public SyncResult(Iterator<Resource> resources, String syncToken, boolean fullSync) {
+        if (resources == null)
+            throw new IllegalArgumentException("Invalid argument: the resources cannot be null.");
+
+        this.resources = resources;
+        this.syncToken = syncToken;
+        this.fullSync = fullSync;
+    }
+
+    /**
+     * Method used to create the result from the Bundle returned by a DeltaSyncListener.
+     *
+     * @param bundle: the Bundle containing the changed resources and the sync token.
+     * @return the result of the synchronization.
+     */
+    public static SyncResult of(Bundle bundle) {
+        if (bundle == null)
+            throw new IllegalArgumentException("Invalid argument: the bundle cannot be null.");
+
+        List<Resource> resources = new ArrayList<Resource>(bundle.getEntry().size());
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.getResource() != null)
+                resources.add(entry.getResource());
+        }
+
+        return new SyncResult(resources.iterator(), SyncTokens.getSyncToken(bundle), SyncTokens.isFullSync(bundle));
+    }
+
+    /**
+     *
+     * @return the changed resources.
+     */
+    public Iterator<Resource> getResources() {
+        return resources;
+    }
+
+    /**
+     *
+     * @return the token to be used in the next request.
+     */
+    public String getSyncToken() {
+        return syncToken;
+    }
+
+    /**
+     *
+     * @return true if all the resources have been returned instead of the changes.
+     */
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+}
@@ -0,0 +1,41 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.io.IOException;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Interface of an encoding of the Bundles exchanged by the R2D and D2D APIs.
+ *               Every codec is identified by a name, used to negotiate the encoding between
+ *               the two parties (see BundleCodecRegistry). Implementations are thread safe.
+ */
+public interface BundleCodec {
+
+    /**
+     *
+     * @return the name identifying the encoding.
+     */
+    String getName();
+
+    /**
+     * Method used to encode a Bundle.
+     *
+     * @param bundle: the Bundle to be encoded.
+     * @return the encoded Bundle.
+     * @throws IOException in case of failure
+     */
+    byte[] encode(Bundle bundle) throws IOException;
+
+    /**
+     * Method used to decode a Bundle.
+     *
+     * @param data: the encoded Bundle.
+     * @return the decoded Bundle.
+     * @throws IOException if the data is not a valid encoding of a Bundle.
+     */
+    Bundle decode(byte[] data) throws IOException;
+
+}
@@ -0,0 +1,111 @@
+package eu.interopehrate.protocols.codec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Registry of the codecs supported by a party, used to negotiate the encoding
+ *               of the Bundles: the client sends the names of the codecs it supports, in order
+ *               of preference, and the server uses the first one it supports too. JSON is
+ *               supported by every party, so it is used when no other codec is shared.
+ *
+ *               The registry is created with (in order of preference) CBOR+deflate, JSON+gzip,
+ *               JSON+deflate, CBOR and JSON, sharing a pool of parsers; other codecs can be
+ *               registered (the later ones have lower preference).
+ *
+ *  Usage:
+ *
+ *  // client
+ *  List<String> accepted = registry.getNames();
+ *  // server
+ *  BundleCodec codec = serverRegistry.negotiate(accepted);
+ *  byte[] data = codec.encode(aFhirBundle);
+ *
+ */
+public class BundleCodecRegistry {
+
+    private final JsonBundleCodec json;
+    // replaced (never modified) on registration, so it can be read without locking
+    private volatile Map<String, BundleCodec> codecs;
+
+    /**
+     *
+     * @param context: the context used by the codecs.
+     */
+    public BundleCodecRegistry(FhirContext context) {
+        ParserPool parsers = new ParserPool(context);
+        json = new JsonBundleCodec(parsers);
+
+        Map<String, BundleCodec> defaults = new LinkedHashMap<String, BundleCodec>();
+        BundleCodec cbor = new CborBundleCodec(parsers);
+        BundleCodec cborDeflate = new CompressedBundleCodec(cbor, CompressedBundleCodec.Compression.DEFLATE);
+        BundleCodec gzip = new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP);
+        BundleCodec deflate = new CompressedBundleCodec(json, CompressedBundleCodec.Compression.DEFLATE);
+        defaults.put(cborDeflate.getName(), cborDeflate);
+        defaults.put(gzip.getName(), gzip);
+        defaults.put(deflate.getName(), deflate);
+        defaults.put(cbor.getName(), cbor);
+        defaults.put(json.getName(), json);
+        codecs = defaults;
+    }
+
+    /**
+     * Method used to add a codec, replacing the one with the same name.
+     *
+     * @param codec: the codec to be added.
+     */
+    public synchronized void register(BundleCodec codec) {
+        if (codec == null || codec.getName() == null)
+            throw new IllegalArgumentException("Invalid argument: the codec and its name cannot be null.");
+
+        Map<String, BundleCodec> updated = new LinkedHashMap<String, BundleCodec>(codecs);
+        updated.put(codec.getName(), codec);
+        codecs = updated;
+    }
+
+    /**
+     *
+     * @param name: the name of a codec.
+     * @return the codec with the provided name, or null if not supported.
+     */
+    public BundleCodec getCodec(String name) {
+        return codecs.get(name);
+    }
+
+    /**
+     *
+     * @return the names of the supported codecs, in order of preference.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(codecs.keySet()));
+    }
+
+    /**
+     * Method used to choose the codec to be used with another party.
+     *
+     * @param accepted: the names of the codecs supported by the other party, in order of preference.
+     * @return the first accepted codec supported by this registry, JSON if none.
+     */
+    public BundleCodec negotiate(List<String> accepted) {
+        Map<String, BundleCodec> current = codecs;
+        BundleCodec codec;
+        if (accepted != null) {
+            for (String name : accepted) {
+                codec = name == null ? null : current.get(name);
+                if (codec != null)
+                    return codec;
+            }
+        }
+
+        return json;
+    }
+
+}
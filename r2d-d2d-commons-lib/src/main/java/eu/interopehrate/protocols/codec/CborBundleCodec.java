@@ -0,0 +1,536 @@
+package eu.interopehrate.protocols.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Codec encoding the JSON representation of the Bundles in CBOR (RFC 7049),
+ *               with two dictionaries making the output compact:
+ *
+ *               - the element names are encoded as integers: the most common FHIR element
+ *                 names have a fixed index, the other ones are written as text the first time
+ *                 and get the next index;
+ *               - a string value of at least 4 characters is written as text the first time,
+ *                 the following occurrences are references to it (tag 25, as in the CBOR
+ *                 stringref extension).
+ *
+ *               Numbers keep their representation, so the decoded Bundle is encoded again
+ *               exactly as the original one (a signed Bundle still verifies): integers are CBOR
+ *               integers, decimals written in plain notation are decimal fractions (tag 4) so
+ *               their precision is preserved, the other numbers (for instance 1e3 or -0) are
+ *               kept as text with the private tag 0x4945. The dictionaries are part of the
+ *               format, so the name of the codec contains its version.
+ *
+ *               A payload nested deeper than MAX_DEPTH levels is rejected.
+ */
+public class CborBundleCodec implements BundleCodec {
+
+    public static final String NAME = "cbor-iehr1";
+
+    // far beyond the nesting of any FHIR Bundle, bounds the recursion of the decoder
+    public static final int MAX_DEPTH = 256;
+
+    // the order of the names is part of the format, new names can only be appended
+    private static final String[] ELEMENT_NAMES = {
+            "resourceType", "id", "meta", "versionId", "lastUpdated", "profile", "text", "status",
+            "div", "extension", "url", "valueString", "valueCode", "valueReference", "valueBoolean",
+            "valueDateTime", "valueQuantity", "identifier", "system", "value", "code", "display",
+            "coding", "category", "subject", "reference", "encounter", "effectiveDateTime", "issued",
+            "performer", "valueCodeableConcept", "interpretation", "referenceRange", "low", "high",
+            "unit", "entry", "fullUrl", "resource", "type", "total", "link", "relation", "search",
+            "mode", "request", "method", "response", "name", "family", "given", "gender", "birthDate",
+            "telecom", "use", "address", "line", "city", "postalCode", "country", "date", "author",
+            "title", "section", "period", "start", "end", "note", "effectivePeriod", "result",
+            "conclusion", "presentedForm", "contentType", "data", "content", "attachment", "size",
+            "hash", "creation", "medicationReference", "medicationCodeableConcept", "dosage",
+            "timing", "route", "doseAndRate", "doseQuantity", "clinicalStatus", "verificationStatus",
+            "severity", "onsetDateTime", "recordedDate", "recorder", "asserter", "target", "recorded",
+            "agent", "who", "onBehalfOf", "signature", "when", "sigFormat", "targetFormat", "entity",
+            "role", "what", "basedOn", "partOf", "component", "valueInteger", "valueDecimal",
+            "valuePeriod", "specimen", "hasMember", "derivedFrom", "bodySite", "tag", "security",
+            "source", "language", "contained", "modifierExtension", "active", "organization",
+            "patient", "class", "serviceProvider", "participant", "individual", "reasonCode",
+            "reasonReference", "diagnosis", "condition", "custodian", "attester", "party",
+            "confidentiality", "relatesTo", "event", "detail", "form", "ingredient",
+            "itemCodeableConcept", "itemReference", "strength", "numerator", "denominator", "amount",
+            "batch", "lotNumber", "expirationDate", "manufacturer", "description",
+            "occurrenceDateTime", "vaccineCode", "criticality", "reaction", "manifestation",
+            "substance", "location", "timestamp", "comparator", "effectiveInstant", "authoredOn",
+            "intent", "medication", "requester", "dosageInstruction", "activity", "goal"
+    };
+
+    private static final Map<String, Integer> ELEMENT_INDEXES = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < ELEMENT_NAMES.length; i++) {
+            if (ELEMENT_INDEXES.put(ELEMENT_NAMES[i], i) != null)
+                throw new IllegalStateException("Duplicated element name: " + ELEMENT_NAMES[i]);
+        }
+    }
+
+    private static final int MIN_REFERENCED_LENGTH = 4;
+    // digits after the point of a decimal fraction, bounds the text written by the decoder
+    private static final int MAX_SCALE = 1000;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_STRING_REFERENCE = 25;
+    private static final int TAG_NUMBER_TEXT = 0x4945;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int DOUBLE = 0xFB;
+    private static final int BREAK = 0xFF;
+    private static final int INDEFINITE = 31;
+
+    private final ParserPool parsers;
+
+    /**
+     *
+     * @param parsers: the pool of the parsers used to encode and decode the Bundles.
+     */
+    public CborBundleCodec(ParserPool parsers) {
+        if (parsers == null)
+            throw new IllegalArgumentException("Invalid argument: the pool of parsers cannot be null.");
+
+        this.parsers = parsers;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Bundle bundle) throws IOException {
+        String json;
+        IParser parser = parsers.borrow();
+        try {
+            json = parser.encodeResourceToString(bundle);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            parsers.release(parser);
+        }
+
+        Encoder encoder = new Encoder(json.length() / 3);
+        JsonReader reader = new JsonReader(new StringReader(json));
+        encoder.encodeValue(reader);
+        if (reader.peek() != JsonToken.END_DOCUMENT)
+            throw new IOException("Unexpected content after the Bundle.");
+
+        return encoder.out.toByteArray();
+    }
+
+    @Override
+    public Bundle decode(byte[] data) throws IOException {
+        StringWriter json = new StringWriter(data.length * 3);
+        JsonWriter writer = new JsonWriter(json);
+        Decoder decoder = new Decoder(data);
+        try {
+            decoder.decodeValue(writer, decoder.readByte());
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated CBOR data.");
+        } catch (IllegalStateException e) {
+            // thrown by the writer when the structure is not valid
+            throw new IOException("Invalid CBOR data: " + e.getMessage());
+        }
+        writer.flush();
+        if (decoder.position != data.length)
+            throw new IOException("Unexpected content after the Bundle.");
+
+        IParser parser = parsers.borrow();
+        try {
+            return parser.parseResource(Bundle.class, json.toString());
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            parsers.release(parser);
+        }
+    }
+
+    /*
+     * Converts JSON to CBOR
+     */
+    private static final class Encoder {
+        private final ByteArrayOutputStream out;
+        private final Map<String, Integer> names = new HashMap<String, Integer>(ELEMENT_INDEXES);
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private Encoder(int initialSize) {
+            this.out = new ByteArrayOutputStream(Math.max(64, initialSize));
+        }
+
+        private void encodeValue(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.write((MAJOR_MAP << 5) | INDEFINITE);
+                    while (in.hasNext()) {
+                        encodeName(in.nextName());
+                        encodeValue(in);
+                    }
+                    in.endObject();
+                    out.write(BREAK);
+                    break;
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.write((MAJOR_ARRAY << 5) | INDEFINITE);
+                    while (in.hasNext())
+                        encodeValue(in);
+                    in.endArray();
+                    out.write(BREAK);
+                    break;
+                case STRING:
+                    encodeString(in.nextString());
+                    break;
+                case NUMBER:
+                    encodeNumber(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.write(in.nextBoolean() ? TRUE : FALSE);
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.write(NULL);
+                    break;
+                default:
+                    throw new IOException("Unexpected JSON token: " + in.peek());
+            }
+        }
+
+        private void encodeName(String name) {
+            Integer index = names.get(name);
+            if (index != null) {
+                writeHead(MAJOR_UNSIGNED, index);
+            } else {
+                writeText(name);
+                names.put(name, names.size());
+            }
+        }
+
+        private void encodeString(String value) {
+            if (value.length() < MIN_REFERENCED_LENGTH) {
+                writeText(value);
+                return;
+            }
+
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeHead(MAJOR_TAG, TAG_STRING_REFERENCE);
+                writeHead(MAJOR_UNSIGNED, index);
+            } else {
+                writeText(value);
+                strings.put(value, strings.size());
+            }
+        }
+
+        private void encodeNumber(String text) throws IOException {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                try {
+                    long value = Long.parseLong(text);
+                    // "-0" is not an integer of CBOR
+                    if (Long.toString(value).equals(text)) {
+                        writeInteger(value);
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                    // out of the range of a long, encoded as a decimal fraction
+                }
+            }
+
+            BigDecimal decimal;
+            try {
+                decimal = new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid JSON number: " + text);
+            }
+            // the decoder writes the decimal fractions in plain notation
+            if (decimal.scale() > MAX_SCALE || !decimal.toPlainString().equals(text)) {
+                writeHead(MAJOR_TAG, TAG_NUMBER_TEXT);
+                writeText(text);
+                return;
+            }
+            writeHead(MAJOR_TAG, TAG_DECIMAL_FRACTION);
+            writeHead(MAJOR_ARRAY, 2);
+            writeInteger(-(long) decimal.scale());
+            BigInteger mantissa = decimal.unscaledValue();
+            if (mantissa.bitLength() < 64) {
+                writeInteger(mantissa.longValue());
+            } else {
+                boolean negative = mantissa.signum() < 0;
+                byte[] magnitude = (negative ? mantissa.negate().subtract(BigInteger.ONE) : mantissa).toByteArray();
+                writeHead(MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+                writeHead(MAJOR_BYTES, magnitude.length);
+                out.write(magnitude, 0, magnitude.length);
+            }
+        }
+
+        private void writeInteger(long value) {
+            if (value >= 0)
+                writeHead(MAJOR_UNSIGNED, value);
+            else
+                writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+
+        private void writeText(String value) {
+            byte[] bytes = value.getBytes(JsonBundleCodec.UTF_8);
+            writeHead(MAJOR_TEXT, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        private void writeHead(int major, long value) {
+            int type = major << 5;
+            if (value < 24) {
+                out.write(type | (int) value);
+            } else if (value < 0x100) {
+                out.write(type | 24);
+                out.write((int) value);
+            } else if (value < 0x10000) {
+                out.write(type | 25);
+                writeBytes(value, 2);
+            } else if (value < 0x100000000L) {
+                out.write(type | 26);
+                writeBytes(value, 4);
+            } else {
+                out.write(type | 27);
+                writeBytes(value, 8);
+            }
+        }
+
+        private void writeBytes(long value, int count) {
+            for (int shift = (count - 1) * 8; shift >= 0; shift -= 8)
+                out.write((int) (value >>> shift));
+        }
+    }
+
+    /*
+     * Converts CBOR to JSON
+     */
+    private static final class Decoder {
+        private final byte[] data;
+        private final List<String> names = new ArrayList<String>(ELEMENT_NAMES.length + 32);
+        private final List<String> strings = new ArrayList<String>();
+        private int position;
+        private int depth;
+
+        private Decoder(byte[] data) {
+            this.data = data;
+            for (String name : ELEMENT_NAMES)
+                names.add(name);
+        }
+
+        private void decodeValue(JsonWriter out, int initial) throws IOException {
+            int major = initial >>> 5;
+            int info = initial & 0x1F;
+            long length;
+            switch (major) {
+                case MAJOR_UNSIGNED:
+                case MAJOR_NEGATIVE:
+                    out.value(readInteger(initial));
+                    break;
+                case MAJOR_TEXT:
+                    out.value(readText(initial, true));
+                    break;
+                case MAJOR_ARRAY:
+                    enter();
+                    out.beginArray();
+                    if (info == INDEFINITE) {
+                        for (int b = readByte(); b != BREAK; b = readByte())
+                            decodeValue(out, b);
+                    } else {
+                        length = readArgument(info);
+                        for (long i = 0; i < length; i++)
+                            decodeValue(out, readByte());
+                    }
+                    out.endArray();
+                    depth--;
+                    break;
+                case MAJOR_MAP:
+                    enter();
+                    out.beginObject();
+                    if (info == INDEFINITE) {
+                        for (int b = readByte(); b != BREAK; b = readByte()) {
+                            out.name(readName(b));
+                            decodeValue(out, readByte());
+                        }
+                    } else {
+                        length = readArgument(info);
+                        for (long i = 0; i < length; i++) {
+                            out.name(readName(readByte()));
+                            decodeValue(out, readByte());
+                        }
+                    }
+                    out.endObject();
+                    depth--;
+                    break;
+                case MAJOR_TAG:
+                    decodeTagged(out, readArgument(info));
+                    break;
+                case MAJOR_SIMPLE:
+                    if (initial == TRUE || initial == FALSE)
+                        out.value(initial == TRUE);
+                    else if (initial == NULL)
+                        out.nullValue();
+                    else if (initial == DOUBLE)
+                        out.value(Double.longBitsToDouble(readBytes(8)));
+                    else
+                        throw new IOException("Unsupported CBOR simple value: " + initial);
+                    break;
+                default:
+                    throw new IOException("Unsupported CBOR major type: " + major);
+            }
+        }
+
+        private void decodeTagged(JsonWriter out, long tag) throws IOException {
+            if (tag == TAG_STRING_REFERENCE) {
+                long index = readInteger(readByte());
+                if (index < 0 || index >= strings.size())
+                    throw new IOException("Invalid string reference: " + index);
+                out.value(strings.get((int) index));
+            } else if (tag == TAG_DECIMAL_FRACTION) {
+                if (readByte() != ((MAJOR_ARRAY << 5) | 2))
+                    throw new IOException("Invalid decimal fraction.");
+                long exponent = readInteger(readByte());
+                BigInteger mantissa = readMantissa(readByte());
+                if (exponent > 0 || exponent < -MAX_SCALE)
+                    throw new IOException("Invalid decimal fraction.");
+                out.jsonValue(new BigDecimal(mantissa, (int) -exponent).toPlainString());
+            } else if (tag == TAG_NUMBER_TEXT) {
+                String text = readText(readByte(), false);
+                try {
+                    new BigDecimal(text);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid number: " + text);
+                }
+                out.jsonValue(text);
+            } else {
+                throw new IOException("Unsupported CBOR tag: " + tag);
+            }
+        }
+
+        private void enter() throws IOException {
+            if (++depth > MAX_DEPTH)
+                throw new IOException("CBOR data nested deeper than " + MAX_DEPTH + " levels.");
+        }
+
+        private BigInteger readMantissa(int initial) throws IOException {
+            if ((initial >>> 5) != MAJOR_TAG)
+                return BigInteger.valueOf(readInteger(initial));
+
+            long tag = readArgument(initial & 0x1F);
+            int bytes = readByte();
+            if ((tag != TAG_POSITIVE_BIGNUM && tag != TAG_NEGATIVE_BIGNUM) || (bytes >>> 5) != MAJOR_BYTES)
+                throw new IOException("Invalid decimal fraction.");
+
+            long length = readArgument(bytes & 0x1F);
+            byte[] magnitude = new byte[checkLength(length)];
+            System.arraycopy(data, position, magnitude, 0, magnitude.length);
+            position += magnitude.length;
+            BigInteger value = new BigInteger(1, magnitude);
+            return tag == TAG_POSITIVE_BIGNUM ? value : value.negate().subtract(BigInteger.ONE);
+        }
+
+        private String readName(int initial) throws IOException {
+            if ((initial >>> 5) == MAJOR_TEXT) {
+                String name = readText(initial, false);
+                names.add(name);
+                return name;
+            }
+
+            long index = readInteger(initial);
+            if (index < 0 || index >= names.size())
+                throw new IOException("Invalid element name index: " + index);
+            return names.get((int) index);
+        }
+
+        private String readText(int initial, boolean isValue) throws IOException {
+            if ((initial >>> 5) != MAJOR_TEXT)
+                throw new IOException("Text expected, found major type " + (initial >>> 5));
+
+            int length = checkLength(readArgument(initial & 0x1F));
+            String text = new String(data, position, length, JsonBundleCodec.UTF_8);
+            position += length;
+            if (isValue && text.length() >= MIN_REFERENCED_LENGTH)
+                strings.add(text);
+
+            return text;
+        }
+
+        private long readInteger(int initial) throws IOException {
+            int major = initial >>> 5;
+            long value = readArgument(initial & 0x1F);
+            if (value < 0)
+                throw new IOException("CBOR integer out of range.");
+            if (major == MAJOR_UNSIGNED)
+                return value;
+            if (major == MAJOR_NEGATIVE)
+                return -1 - value;
+
+            throw new IOException("Integer expected, found major type " + major);
+        }
+
+        private long readArgument(int info) throws IOException {
+            if (info < 24)
+                return info;
+            if (info == 24)
+                return readByte();
+            if (info == 25)
+                return readBytes(2);
+            if (info == 26)
+                return readBytes(4);
+            if (info == 27)
+                return readBytes(8);
+
+            throw new IOException("Unsupported CBOR argument: " + info);
+        }
+
+        private int checkLength(long length) throws IOException {
+            if (length < 0 || length > data.length - position)
+                throw new IOException("Invalid CBOR length: " + length);
+            return (int) length;
+        }
+
+        private long readBytes(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++)
+                value = (value << 8) | readByte();
+            return value;
+        }
+
+        private int readByte() {
+            return data[position++] & 0xFF;
+        }
+    }
+
+}
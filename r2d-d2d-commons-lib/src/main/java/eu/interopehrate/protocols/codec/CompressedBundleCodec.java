@@ -0,0 +1,167 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Codec compressing the output of another codec. The name is the one of the
+ *               wrapped codec followed by the compression ("json+gzip", "json+deflate").
+ *               The size of the decompressed data is limited, so a small payload received from
+ *               a peer cannot expand to fill the memory.
+ *
+ *  Usage:
+ *
+ *  BundleCodec codec = new CompressedBundleCodec(jsonCodec, CompressedBundleCodec.Compression.GZIP);
+ *
+ */
+public class CompressedBundleCodec implements BundleCodec {
+
+    public enum Compression {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String name;
+
+        Compression(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final int DEFAULT_MAX_DECODED_SIZE = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final BundleCodec codec;
+    private final Compression compression;
+    private final int level;
+    private final int maxDecodedSize;
+    private final String name;
+
+    /**
+     *
+     * @param codec: the codec whose output is compressed.
+     * @param compression: the compression algorithm.
+     */
+    public CompressedBundleCodec(BundleCodec codec, Compression compression) {
+        this(codec, compression, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     *
+     * @param codec: the codec whose output is compressed.
+     * @param compression: the compression algorithm.
+     * @param level: the compression level (see Deflater), lower levels cost less CPU.
+     */
+    public CompressedBundleCodec(BundleCodec codec, Compression compression, int level) {
+        this(codec, compression, level, DEFAULT_MAX_DECODED_SIZE);
+    }
+
+    /**
+     *
+     * @param codec: the codec whose output is compressed.
+     * @param compression: the compression algorithm.
+     * @param level: the compression level (see Deflater), lower levels cost less CPU.
+     * @param maxDecodedSize: the maximum size in bytes of the decompressed data.
+     */
+    public CompressedBundleCodec(BundleCodec codec, Compression compression, int level, int maxDecodedSize) {
+        if (codec == null || compression == null)
+            throw new IllegalArgumentException("Invalid arguments: the codec and the compression cannot be null.");
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid argument: compression level " + level);
+        if (maxDecodedSize < 1)
+            throw new IllegalArgumentException("Invalid argument: maxDecodedSize must be positive.");
+
+        this.codec = codec;
+        this.compression = compression;
+        this.level = level;
+        this.maxDecodedSize = maxDecodedSize;
+        this.name = codec.getName() + "+" + compression.getName();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(Bundle bundle) throws IOException {
+        byte[] data = codec.encode(bundle);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        Deflater deflater = null;
+        OutputStream out;
+        if (compression == Compression.GZIP) {
+            out = new LeveledGZIPOutputStream(bytes, level);
+        } else {
+            deflater = new Deflater(level);
+            out = new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE);
+        }
+
+        try {
+            out.write(data);
+            out.close();
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Bundle decode(byte[] data) throws IOException {
+        Inflater inflater = null;
+        InputStream in;
+        if (compression == Compression.GZIP) {
+            in = new GZIPInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+        } else {
+            inflater = new Inflater();
+            in = new InflaterInputStream(new ByteArrayInputStream(data), inflater, BUFFER_SIZE);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(data.length * 4L, maxDecodedSize));
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (n > maxDecodedSize - out.size())
+                    throw new IOException("Decompressed data larger than " + maxDecodedSize + " bytes.");
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+            if (inflater != null)
+                inflater.end();
+        }
+
+        return codec.decode(out.toByteArray());
+    }
+
+    /*
+     * GZIPOutputStream does not allow to choose the compression level
+     */
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+        private LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Codec encoding the Bundles in JSON (UTF-8), the encoding supported by every
+ *               party.
+ */
+public class JsonBundleCodec implements BundleCodec {
+
+    public static final String NAME = "json";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ParserPool parsers;
+
+    /**
+     *
+     * @param parsers: the pool of the parsers used to encode and decode the Bundles.
+     */
+    public JsonBundleCodec(ParserPool parsers) {
+        if (parsers == null)
+            throw new IllegalArgumentException("Invalid argument: the pool of parsers cannot be null.");
+
+        this.parsers = parsers;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Bundle bundle) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(out, UTF_8);
+        IParser parser = parsers.borrow();
+        try {
+            parser.encodeResourceToWriter(bundle, writer);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            parsers.release(parser);
+        }
+        writer.flush();
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public Bundle decode(byte[] data) throws IOException {
+        IParser parser = parsers.borrow();
+        try {
+            return parser.parseResource(Bundle.class, new InputStreamReader(new ByteArrayInputStream(data), UTF_8));
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            parsers.release(parser);
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package eu.interopehrate.protocols.codec;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Pool of HAPI JSON parsers. A parser cannot be used by more threads at the
+ *               same time, so the codecs borrow one for every operation and give it back at
+ *               the end; at most maxIdle parsers are kept, the other ones are discarded.
+ *
+ *  Usage:
+ *
+ *  IParser parser = pool.borrow();
+ *  try {
+ *      parser.encodeResourceToString(aFhirBundle);
+ *  } finally {
+ *      pool.release(parser);
+ *  }
+ *
+ */
+public class ParserPool {
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    private final FhirContext context;
+    private final int maxIdle;
+    private final Queue<IParser> idle = new ConcurrentLinkedQueue<IParser>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     *
+     * @param context: the context creating the parsers.
+     */
+    public ParserPool(FhirContext context) {
+        this(context, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     *
+     * @param context: the context creating the parsers.
+     * @param maxIdle: the maximum number of parsers kept in the pool.
+     */
+    public ParserPool(FhirContext context, int maxIdle) {
+        if (context == null)
+            throw new IllegalArgumentException("Invalid argument: the context cannot be null.");
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("Invalid argument: maxIdle cannot be negative.");
+
+        this.context = context;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     *
+     * @return a parser to be given back with release.
+     */
+    public IParser borrow() {
+        IParser parser = idle.poll();
+        if (parser == null)
+            return context.newJsonParser();
+
+        idleCount.decrementAndGet();
+        return parser;
+    }
+
+    /**
+     * Method used to give back a parser to the pool.
+     *
+     * @param parser: a parser obtained with borrow.
+     */
+    public void release(IParser parser) {
+        if (parser == null)
+            return;
+
+        if (idleCount.incrementAndGet() <= maxIdle)
+            idle.offer(parser);
+        else
+            idleCount.decrementAndGet();
+    }
+
+    public FhirContext getContext() {
+        return context;
+    }
+
+}
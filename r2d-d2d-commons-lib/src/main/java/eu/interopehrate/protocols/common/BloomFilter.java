@@ -0,0 +1,143 @@
+package eu.interopehrate.protocols.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Bloom filter of strings, sized for an expected number of elements and a false
+ *               positive probability. The hash function only depends on the characters of the
+ *               strings, so a filter built on a device can be serialized and queried on
+ *               another one.
+ */
+public final class BloomFilter {
+
+    // 64M bits, about 2M elements with a false positive probability of 1e-6
+    static final int MAX_WORDS = 1 << 20;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     *
+     * @param expectedElements: the number of elements that will be added to the filter.
+     * @param falsePositiveProbability: the probability that the filter contains an element not added.
+     */
+    public BloomFilter(int expectedElements, double falsePositiveProbability) {
+        if (expectedElements < 0 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("Invalid arguments: expectedElements cannot be negative and falsePositiveProbability must be between 0 and 1.");
+
+        int n = Math.max(expectedElements, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.bits = new long[(int) (m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.bitCount = bits.length * 64L;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Method used to add an element to the filter.
+     *
+     * @param element: the element to be added.
+     */
+    public void put(String element) {
+        long h1 = hash(element);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        long index;
+        for (int i = 0; i < hashCount; i++) {
+            index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     *
+     * @param element: the element to be searched.
+     * @return false if the element has surely not been added, true if it has probably been added.
+     */
+    public boolean mightContain(String element) {
+        long h1 = hash(element);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        long index;
+        for (int i = 0; i < hashCount; i++) {
+            index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     * @return the number of bits of the filter.
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     *
+     * @return the number of hash functions used by the filter.
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits)
+            out.writeLong(word);
+    }
+
+    static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int hashCount = in.readUnsignedByte();
+        int words = in.readInt();
+        if (hashCount < 1 || words < 1)
+            throw new IOException("Invalid Bloom filter: " + words + " words, " + hashCount + " hash functions.");
+        // the size is sent by the peer, it is checked before allocating the filter
+        // (available() is exact for the ByteArrayInputStream used by ResourceDigest)
+        if (words > MAX_WORDS || words * 8L > in.available())
+            throw new IOException("Invalid Bloom filter: " + words + " words, " + in.available() + " bytes available.");
+
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++)
+            bits[i] = in.readLong();
+
+        return new BloomFilter(bits, hashCount);
+    }
+
+    /*
+     * 64 bit FNV-1a of the characters, followed by a finalization mix
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,108 @@
+package eu.interopehrate.protocols.common;
+
+import java.util.zip.CRC32;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Segment of a serialized Bundle sent with a chunked upload. Every chunk carries
+ *               the id of the transfer, its sequence number (starting from 0), the total
+ *               number of chunks and the CRC32 checksum of its payload, so the receiver can
+ *               detect corrupted or missing chunks.
+ */
+public final class BundleChunk {
+
+    private final String transferId;
+    private final int sequence;
+    private final int totalChunks;
+    private final byte[] payload;
+    private final long checksum;
+
+    /**
+     * Creates a chunk to be sent, computing the checksum of the payload.
+     *
+     * @param transferId: the id of the transfer.
+     * @param sequence: the sequence number of the chunk.
+     * @param totalChunks: the number of chunks of the transfer.
+     * @param payload: the bytes of the chunk.
+     */
+    public BundleChunk(String transferId, int sequence, int totalChunks, byte[] payload) {
+        this(transferId, sequence, totalChunks, payload, checksumOf(payload));
+    }
+
+    /**
+     * Creates a received chunk.
+     *
+     * @param transferId: the id of the transfer.
+     * @param sequence: the sequence number of the chunk.
+     * @param totalChunks: the number of chunks of the transfer.
+     * @param payload: the bytes of the chunk.
+     * @param checksum: the checksum of the payload computed by the sender.
+     */
+    public BundleChunk(String transferId, int sequence, int totalChunks, byte[] payload, long checksum) {
+        if (transferId == null || payload == null)
+            throw new IllegalArgumentException("Invalid arguments: the transfer id and the payload cannot be null.");
+        if (totalChunks < 1 || sequence < 0 || sequence >= totalChunks)
+            throw new IllegalArgumentException("Invalid arguments: sequence " + sequence + " of " + totalChunks + " chunks.");
+
+        this.transferId = transferId;
+        this.sequence = sequence;
+        this.totalChunks = totalChunks;
+        this.payload = payload;
+        this.checksum = checksum;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     *
+     * @return true if this is the last chunk of the transfer.
+     */
+    public boolean isLast() {
+        return sequence == totalChunks - 1;
+    }
+
+    /**
+     *
+     * @return true if the checksum matches the payload.
+     */
+    public boolean isValid() {
+        return checksum == checksumOf(payload);
+    }
+
+    /**
+     *
+     * @param payload: the bytes of a chunk.
+     * @return the CRC32 checksum of the bytes.
+     */
+    public static long checksumOf(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "BundleChunk{" + transferId + " " + (sequence + 1) + "/" + totalChunks + ", " + payload.length + " bytes}";
+    }
+
+}
@@ -0,0 +1,127 @@
+package eu.interopehrate.protocols.common;
+
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Immutable representation of a code used to select resources, parsed from the
+ *               form "&lt;system name&gt;|&lt;code&gt;" or from a code alone (matching the
+ *               code in any system). Tokens are interned, so equal tokens are usually the same
+ *               instance and compare by identity; the hash code is computed once.
+ */
+public final class CodeToken {
+
+    private static final int MAX_INTERNED = 50000;
+    private static final ConcurrentMap<CodeToken, CodeToken> INTERNED = new ConcurrentHashMap<CodeToken, CodeToken>();
+
+    private final String system;
+    private final String code;
+    private final int hash;
+
+    private CodeToken(String system, String code) {
+        this.system = system;
+        this.code = code;
+        this.hash = 31 * (system == null ? 0 : system.hashCode()) + code.hashCode();
+    }
+
+    /**
+     * Method used to parse a token.
+     *
+     * @param token: a code in the form "&lt;system name&gt;|&lt;code&gt;", or a code alone.
+     * @return the parsed token, or null if the argument is null or empty.
+     */
+    public static CodeToken parse(String token) {
+        if (token == null || token.isEmpty())
+            return null;
+
+        int separator = token.lastIndexOf('|');
+        if (separator < 0)
+            return of(null, token);
+
+        String code = token.substring(separator + 1);
+        if (code.isEmpty())
+            throw new IllegalArgumentException("Invalid token: " + token + " does not contain a code.");
+
+        return of(separator == 0 ? null : token.substring(0, separator), code);
+    }
+
+    /**
+     * Method used to retrieve the token of a code.
+     *
+     * @param system: the system of the code, null to match the code in any system.
+     * @param code: the code.
+     * @return the token.
+     */
+    public static CodeToken of(String system, String code) {
+        if (code == null)
+            throw new IllegalArgumentException("Invalid argument: the code cannot be null.");
+
+        CodeToken token = new CodeToken(system, code);
+        CodeToken interned = INTERNED.get(token);
+        if (interned != null)
+            return interned;
+
+        // tokens come also from the requests, so the number of interned tokens is bounded
+        if (INTERNED.size() >= MAX_INTERNED)
+            return token;
+
+        interned = INTERNED.putIfAbsent(token, token);
+        return interned == null ? token : interned;
+    }
+
+    /**
+     * Method used to check if a coding matches the token.
+     *
+     * @param coding: the coding to be checked.
+     * @return true if the coding has the code of the token and the system of the token
+     *         (any system if the token does not have one).
+     */
+    public boolean matches(Coding coding) {
+        return coding != null && code.equals(coding.getCode())
+                && (system == null || system.equals(coding.getSystem()));
+    }
+
+    /**
+     *
+     * @return the system of the token, or null if it matches any system.
+     */
+    public String getSystem() {
+        return system;
+    }
+
+    /**
+     *
+     * @return the code of the token.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CodeToken))
+            return false;
+
+        CodeToken other = (CodeToken) o;
+        return hash == other.hash && code.equals(other.code)
+                && (system == null ? other.system == null : system.equals(other.system));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return system == null ? code : system + "|" + code;
+    }
+
+}
@@ -0,0 +1,23 @@
+package eu.interopehrate.protocols.common;
+
+import java.util.Set;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Interface of a peer able to describe with a ResourceDigest the resources
+ *               it holds.
+ */
+public interface DigestProvider {
+
+    /**
+     * Method used to retrieve the digest of the resources held by the peer.
+     *
+     * @param categories: the categories of the resources to be described, null for all the categories.
+     * @return the digest of the resources of the requested categories.
+     * @throws Exception in case of failure
+     */
+    ResourceDigest getDigest(Set<FHIRResourceCategory> categories) throws Exception;
+
+}
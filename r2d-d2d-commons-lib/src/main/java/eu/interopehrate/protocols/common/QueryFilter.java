@@ -0,0 +1,145 @@
+package eu.interopehrate.protocols.common;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.List;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Filter on the sub category and on the type of the resources, as requested by
+ *               the subCategory and type arguments of the queries. The arguments are parsed
+ *               once, when the filter is compiled, and the filter can then be evaluated on
+ *               many resources: Observations, DiagnosticReports and Conditions are matched
+ *               directly against their codings without allocating objects, the other
+ *               resources through ResourceClassifier.
+ *
+ *  Usage:
+ *
+ *  QueryFilter filter = QueryFilter.compile("vital-signs", "http://loinc.org|8867-4");
+ *  for (Resource r : resources)
+ *      if (filter.matches(r)) ...
+ *
+ */
+public final class QueryFilter {
+
+    /**
+     * Filter matching all the resources.
+     */
+    public static final QueryFilter ALL = new QueryFilter(null, null);
+
+    private final CodeToken subCategory;
+    private final CodeToken type;
+
+    private QueryFilter(CodeToken subCategory, CodeToken type) {
+        this.subCategory = subCategory;
+        this.type = type;
+    }
+
+    /**
+     * Method used to compile a filter.
+     *
+     * @param subCategory: optional sub category, a code or a "&lt;system name&gt;|&lt;code&gt;" token.
+     * @param type: optional type, a code or a "&lt;system name&gt;|&lt;code&gt;" token.
+     * @return the compiled filter.
+     */
+    public static QueryFilter compile(String subCategory, String type) {
+        return compile(CodeToken.parse(subCategory), CodeToken.parse(type));
+    }
+
+    /**
+     * Method used to compile a filter from already parsed tokens.
+     *
+     * @param subCategory: optional sub category token.
+     * @param type: optional type token.
+     * @return the compiled filter.
+     */
+    public static QueryFilter compile(CodeToken subCategory, CodeToken type) {
+        if (subCategory == null && type == null)
+            return ALL;
+
+        return new QueryFilter(subCategory, type);
+    }
+
+    /**
+     * Method used to evaluate the filter on a resource.
+     *
+     * @param resource: the resource to be checked.
+     * @return true if the resource has the sub category and the type of the filter.
+     */
+    public boolean matches(Resource resource) {
+        if (subCategory == null && type == null)
+            return true;
+        if (resource == null)
+            return false;
+
+        if (resource instanceof Observation) {
+            Observation o = (Observation) resource;
+            return (subCategory == null || (o.hasCategory() && matches(subCategory, o.getCategory())))
+                    && (type == null || (o.hasCode() && matches(type, o.getCode())));
+        } else if (resource instanceof DiagnosticReport) {
+            DiagnosticReport dr = (DiagnosticReport) resource;
+            return (subCategory == null || (dr.hasCategory() && matches(subCategory, dr.getCategory())))
+                    && (type == null || (dr.hasCode() && matches(type, dr.getCode())));
+        } else if (resource instanceof Condition) {
+            Condition c = (Condition) resource;
+            return (subCategory == null || (c.hasCategory() && matches(subCategory, c.getCategory())))
+                    && (type == null || (c.hasCode() && matches(type, c.getCode())));
+        }
+
+        return (subCategory == null || ResourceClassifier.getSubCategories(resource).contains(subCategory))
+                && (type == null || ResourceClassifier.getTypes(resource).contains(type));
+    }
+
+    /**
+     *
+     * @return true if the filter matches all the resources.
+     */
+    public boolean isEmpty() {
+        return subCategory == null && type == null;
+    }
+
+    /**
+     *
+     * @return the sub category token of the filter, or null if not filtered.
+     */
+    public CodeToken getSubCategory() {
+        return subCategory;
+    }
+
+    /**
+     *
+     * @return the type token of the filter, or null if not filtered.
+     */
+    public CodeToken getType() {
+        return type;
+    }
+
+    // indexed loops, so no iterators are allocated
+    private static boolean matches(CodeToken token, List<CodeableConcept> concepts) {
+        for (int i = 0; i < concepts.size(); i++) {
+            if (matches(token, concepts.get(i)))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static boolean matches(CodeToken token, CodeableConcept concept) {
+        if (!concept.hasCoding())
+            return false;
+
+        for (int i = 0; i < concept.getCoding().size(); i++) {
+            if (token.matches(concept.getCoding().get(i)))
+                return true;
+        }
+
+        return false;
+    }
+
+}
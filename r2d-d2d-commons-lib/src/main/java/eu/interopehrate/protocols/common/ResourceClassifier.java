@@ -0,0 +1,313 @@
+package eu.interopehrate.protocols.common;
+
+import org.hl7.fhir.r4.model.AllergyIntolerance;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Composition;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.DocumentManifest;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumeration;
+import org.hl7.fhir.r4.model.Immunization;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Procedure;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Utility class used to find the categories (FHIRResourceCategory and
+ *               DocumentCategory) a resource belongs to, and the other properties used to
+ *               select resources: the clinical date, the sub categories and the type.
+ *               Sub categories and types are returned as CodeTokens: for every coding both
+ *               the token with the system and the one matching any system are returned, so
+ *               they can be looked up with the tokens parsed from a query.
+ */
+public final class ResourceClassifier {
+
+    private static final String LOINC = "http://loinc.org";
+    private static final String PATIENT_SUMMARY_CODE = "60591-5";
+    private static final String LABORATORY_REPORT_CODE = "11502-2";
+    private static final String IMAGE_REPORT_CODE = "18748-4";
+
+    // codes of the diagnostic service sections (http://terminology.hl7.org/CodeSystem/v2-0074)
+    private static final String LABORATORY_SECTION = "LAB";
+    private static final Set<String> IMAGING_SECTIONS = new HashSet<String>(Arrays.asList(
+            "RAD", "CT", "MR", "NMR", "NMS", "CUS", "OUS", "RUS", "VUS", "XRC"));
+
+    private static final Map<ResourceType, FHIRResourceCategory> FHIR_CATEGORIES =
+            new EnumMap<ResourceType, FHIRResourceCategory>(ResourceType.class);
+
+    static {
+        FHIR_CATEGORIES.put(ResourceType.Patient, FHIRResourceCategory.PATIENT);
+        FHIR_CATEGORIES.put(ResourceType.DocumentReference, FHIRResourceCategory.DOCUMENT_REFERENCE);
+        FHIR_CATEGORIES.put(ResourceType.DocumentManifest, FHIRResourceCategory.DOCUMENT_MANIFEST);
+        FHIR_CATEGORIES.put(ResourceType.DiagnosticReport, FHIRResourceCategory.DIAGNOSTIC_REPORT);
+        FHIR_CATEGORIES.put(ResourceType.MedicationRequest, FHIRResourceCategory.MEDICATION_REQUEST);
+        FHIR_CATEGORIES.put(ResourceType.Condition, FHIRResourceCategory.CONDITION);
+        FHIR_CATEGORIES.put(ResourceType.Immunization, FHIRResourceCategory.IMMUNIZATION);
+        FHIR_CATEGORIES.put(ResourceType.AllergyIntolerance, FHIRResourceCategory.ALLERGY_INTOLERANCE);
+        FHIR_CATEGORIES.put(ResourceType.Observation, FHIRResourceCategory.OBSERVATION);
+        FHIR_CATEGORIES.put(ResourceType.Encounter, FHIRResourceCategory.ENCOUNTER);
+        FHIR_CATEGORIES.put(ResourceType.Composition, FHIRResourceCategory.COMPOSITION);
+        FHIR_CATEGORIES.put(ResourceType.Procedure, FHIRResourceCategory.PROCEDURE);
+    }
+
+    private ResourceClassifier() {}
+
+    /**
+     * Method used to retrieve the FHIRResourceCategory of a resource.
+     *
+     * @param resource: the resource to be classified.
+     * @return the category of the resource, or null if its type is not handled by the APIs.
+     */
+    public static FHIRResourceCategory getFHIRCategory(Resource resource) {
+        if (resource == null)
+            return null;
+
+        return FHIR_CATEGORIES.get(resource.getResourceType());
+    }
+
+    /**
+     * Method used to retrieve the DocumentCategory of a resource. Compositions and
+     * DocumentReferences are classified by their type, DiagnosticReports by the diagnostic
+     * service section in their category.
+     *
+     * @param resource: the resource to be classified.
+     * @return the document category of the resource, or null if it is not a document.
+     */
+    public static DocumentCategory getDocumentCategory(Resource resource) {
+        if (resource instanceof Composition && ((Composition) resource).hasType())
+            return documentCategoryOf(((Composition) resource).getType());
+
+        if (resource instanceof DocumentReference && ((DocumentReference) resource).hasType())
+            return documentCategoryOf(((DocumentReference) resource).getType());
+
+        if (resource instanceof DiagnosticReport) {
+            for (CodeableConcept category : ((DiagnosticReport) resource).getCategory()) {
+                for (Coding coding : category.getCoding()) {
+                    if (LABORATORY_SECTION.equals(coding.getCode()))
+                        return DocumentCategory.LABORATORY_REPORT;
+                    if (IMAGING_SECTIONS.contains(coding.getCode()))
+                        return DocumentCategory.IMAGE_REPORT;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Method used to retrieve all the categories of a resource.
+     *
+     * @param resource: the resource to be classified.
+     * @return the FHIRResourceCategory and the DocumentCategory of the resource, an empty set
+     *         if the resource does not belong to any category.
+     */
+    public static Set<ResourceCategory> getCategories(Resource resource) {
+        FHIRResourceCategory fhirCategory = getFHIRCategory(resource);
+        DocumentCategory documentCategory = getDocumentCategory(resource);
+        if (fhirCategory == null && documentCategory == null)
+            return Collections.emptySet();
+
+        Set<ResourceCategory> categories = new LinkedHashSet<ResourceCategory>(4);
+        if (fhirCategory != null)
+            categories.add(fhirCategory);
+        if (documentCategory != null)
+            categories.add(documentCategory);
+
+        return categories;
+    }
+
+    /**
+     * Method used to retrieve the clinically relevant date of a resource (for instance the
+     * effective date of an Observation or the recorded date of a Condition). When the
+     * resource does not have such a date the date of its last update is returned.
+     *
+     * @param resource: the resource whose date must be retrieved.
+     * @return the date of the resource, or null if not available.
+     */
+    public static Date getDate(Resource resource) {
+        Date date = null;
+        if (resource instanceof Observation) {
+            Observation o = (Observation) resource;
+            date = dateOf(o.getEffective());
+            if (date == null)
+                date = o.getIssued();
+        } else if (resource instanceof DiagnosticReport) {
+            DiagnosticReport dr = (DiagnosticReport) resource;
+            date = dateOf(dr.getEffective());
+            if (date == null)
+                date = dr.getIssued();
+        } else if (resource instanceof Composition) {
+            date = ((Composition) resource).getDate();
+        } else if (resource instanceof Condition) {
+            Condition c = (Condition) resource;
+            date = c.getRecordedDate();
+            if (date == null)
+                date = dateOf(c.getOnset());
+        } else if (resource instanceof Encounter) {
+            Encounter e = (Encounter) resource;
+            date = e.hasPeriod() ? e.getPeriod().getStart() : null;
+        } else if (resource instanceof MedicationRequest) {
+            date = ((MedicationRequest) resource).getAuthoredOn();
+        } else if (resource instanceof Immunization) {
+            Immunization i = (Immunization) resource;
+            date = dateOf(i.getOccurrence());
+            if (date == null)
+                date = i.getRecorded();
+        } else if (resource instanceof AllergyIntolerance) {
+            AllergyIntolerance a = (AllergyIntolerance) resource;
+            date = a.getRecordedDate();
+            if (date == null)
+                date = dateOf(a.getOnset());
+        } else if (resource instanceof Procedure) {
+            date = dateOf(((Procedure) resource).getPerformed());
+        } else if (resource instanceof DocumentReference) {
+            date = ((DocumentReference) resource).getDate();
+        } else if (resource instanceof DocumentManifest) {
+            date = ((DocumentManifest) resource).getCreated();
+        }
+
+        if (date == null && resource != null && resource.hasMeta())
+            date = resource.getMeta().getLastUpdated();
+
+        return date;
+    }
+
+    /**
+     * Method used to retrieve the sub categories of a resource (for instance "vital-signs"
+     * for an Observation or "LAB" for a DiagnosticReport).
+     *
+     * @param resource: the resource whose sub categories must be retrieved.
+     * @return the tokens of the sub categories, an empty set if not available.
+     */
+    public static Set<CodeToken> getSubCategories(Resource resource) {
+        List<CodeableConcept> concepts = Collections.emptyList();
+        if (resource instanceof Observation)
+            concepts = ((Observation) resource).getCategory();
+        else if (resource instanceof DiagnosticReport)
+            concepts = ((DiagnosticReport) resource).getCategory();
+        else if (resource instanceof Condition)
+            concepts = ((Condition) resource).getCategory();
+        else if (resource instanceof MedicationRequest)
+            concepts = ((MedicationRequest) resource).getCategory();
+        else if (resource instanceof Composition)
+            concepts = ((Composition) resource).getCategory();
+        else if (resource instanceof DocumentReference)
+            concepts = ((DocumentReference) resource).getCategory();
+        else if (resource instanceof Procedure && ((Procedure) resource).hasCategory())
+            concepts = Collections.singletonList(((Procedure) resource).getCategory());
+        else if (resource instanceof AllergyIntolerance) {
+            Set<CodeToken> tokens = new LinkedHashSet<CodeToken>();
+            for (Enumeration<AllergyIntolerance.AllergyIntoleranceCategory> e : ((AllergyIntolerance) resource).getCategory()) {
+                if (e.getValue() != null) {
+                    tokens.add(CodeToken.of(null, e.getValue().toCode()));
+                    tokens.add(CodeToken.of(e.getValue().getSystem(), e.getValue().toCode()));
+                }
+            }
+            return tokens;
+        }
+
+        return tokensOf(concepts);
+    }
+
+    /**
+     * Method used to retrieve the type of a resource, i.e. the code identifying what the
+     * resource is within its category (for instance the LOINC code of an Observation).
+     *
+     * @param resource: the resource whose type must be retrieved.
+     * @return the tokens of the type, an empty set if not available.
+     */
+    public static Set<CodeToken> getTypes(Resource resource) {
+        List<CodeableConcept> concepts = new ArrayList<CodeableConcept>(1);
+        if (resource instanceof Observation && ((Observation) resource).hasCode())
+            concepts.add(((Observation) resource).getCode());
+        else if (resource instanceof DiagnosticReport && ((DiagnosticReport) resource).hasCode())
+            concepts.add(((DiagnosticReport) resource).getCode());
+        else if (resource instanceof Condition && ((Condition) resource).hasCode())
+            concepts.add(((Condition) resource).getCode());
+        else if (resource instanceof MedicationRequest && ((MedicationRequest) resource).hasMedicationCodeableConcept())
+            concepts.add(((MedicationRequest) resource).getMedicationCodeableConcept());
+        else if (resource instanceof Immunization && ((Immunization) resource).hasVaccineCode())
+            concepts.add(((Immunization) resource).getVaccineCode());
+        else if (resource instanceof AllergyIntolerance && ((AllergyIntolerance) resource).hasCode())
+            concepts.add(((AllergyIntolerance) resource).getCode());
+        else if (resource instanceof Procedure && ((Procedure) resource).hasCode())
+            concepts.add(((Procedure) resource).getCode());
+        else if (resource instanceof Composition && ((Composition) resource).hasType())
+            concepts.add(((Composition) resource).getType());
+        else if (resource instanceof DocumentReference && ((DocumentReference) resource).hasType())
+            concepts.add(((DocumentReference) resource).getType());
+        else if (resource instanceof DocumentManifest && ((DocumentManifest) resource).hasType())
+            concepts.add(((DocumentManifest) resource).getType());
+        else if (resource instanceof Encounter)
+            concepts = ((Encounter) resource).getType();
+
+        return tokensOf(concepts);
+    }
+
+    private static Set<CodeToken> tokensOf(List<CodeableConcept> concepts) {
+        if (concepts.isEmpty())
+            return Collections.emptySet();
+
+        Set<CodeToken> tokens = new LinkedHashSet<CodeToken>();
+        for (CodeableConcept concept : concepts) {
+            for (Coding coding : concept.getCoding()) {
+                if (coding.getCode() == null)
+                    continue;
+
+                tokens.add(CodeToken.of(null, coding.getCode()));
+                if (coding.getSystem() != null)
+                    tokens.add(CodeToken.of(coding.getSystem(), coding.getCode()));
+            }
+        }
+
+        return tokens;
+    }
+
+    private static Date dateOf(Type value) {
+        if (value instanceof BaseDateTimeType)
+            return ((BaseDateTimeType) value).getValue();
+        if (value instanceof Period)
+            return ((Period) value).getStart();
+
+        return null;
+    }
+
+    private static DocumentCategory documentCategoryOf(CodeableConcept type) {
+        for (Coding coding : type.getCoding()) {
+            if (!LOINC.equals(coding.getSystem()))
+                continue;
+
+            if (PATIENT_SUMMARY_CODE.equals(coding.getCode()))
+                return DocumentCategory.PATIENT_SUMMARY;
+            if (LABORATORY_REPORT_CODE.equals(coding.getCode()))
+                return DocumentCategory.LABORATORY_REPORT;
+            if (IMAGE_REPORT_CODE.equals(coding.getCode()))
+                return DocumentCategory.IMAGE_REPORT;
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,190 @@
+package eu.interopehrate.protocols.common;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Compact digest of the resources held by a device, used to send to a peer only
+ *               the resources it does not hold yet. The digest contains a Bloom filter for each
+ *               FHIRResourceCategory, with the version keys ("Type/id|version") of the
+ *               resources of the category. The version of a resource is its meta.versionId or,
+ *               if missing, its meta.lastUpdated; the resources without id or version are never
+ *               added, so they are always sent.
+ *
+ *               With the default false positive probability (1e-6) a filter takes about 29 bits
+ *               for each resource; a false positive means that a resource is not sent to a
+ *               peer that does not hold it.
+ *
+ *  Usage:
+ *
+ *  ResourceDigest digest = ResourceDigest.of(storedResources, ResourceDigest.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+ *  byte[] bytes = digest.toByteArray();
+ *  ...
+ *  if (!ResourceDigest.fromByteArray(bytes).contains(aResource))
+ *      // the peer does not hold the resource
+ *
+ */
+public final class ResourceDigest {
+
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 1e-6;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<FHIRResourceCategory, BloomFilter> filters;
+
+    private ResourceDigest(Map<FHIRResourceCategory, BloomFilter> filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Method used to create the digest of a collection of resources.
+     *
+     * @param resources: the resources held by the device.
+     * @param falsePositiveProbability: the false positive probability of every filter.
+     * @return the digest of the resources.
+     */
+    public static ResourceDigest of(Collection<? extends Resource> resources, double falsePositiveProbability) {
+        Map<FHIRResourceCategory, List<String>> keys = new EnumMap<FHIRResourceCategory, List<String>>(FHIRResourceCategory.class);
+        FHIRResourceCategory category;
+        String key;
+        List<String> list;
+        for (Resource resource : resources) {
+            category = ResourceClassifier.getFHIRCategory(resource);
+            key = versionKeyOf(resource);
+            if (category == null || key == null)
+                continue;
+
+            list = keys.get(category);
+            if (list == null) {
+                list = new ArrayList<String>();
+                keys.put(category, list);
+            }
+            list.add(key);
+        }
+
+        Map<FHIRResourceCategory, BloomFilter> filters = new EnumMap<FHIRResourceCategory, BloomFilter>(FHIRResourceCategory.class);
+        BloomFilter filter;
+        for (Map.Entry<FHIRResourceCategory, List<String>> e : keys.entrySet()) {
+            filter = new BloomFilter(e.getValue().size(), falsePositiveProbability);
+            for (String k : e.getValue())
+                filter.put(k);
+            filters.put(e.getKey(), filter);
+        }
+
+        return new ResourceDigest(filters);
+    }
+
+    /**
+     * Method used to restore a digest serialized with toByteArray.
+     *
+     * @param bytes: the serialized digest.
+     * @return the digest.
+     * @throws IOException if the bytes do not contain a valid digest.
+     */
+    public static ResourceDigest fromByteArray(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int format = in.readUnsignedByte();
+        if (format != FORMAT_VERSION)
+            throw new IOException("Unsupported digest format: " + format);
+
+        Map<FHIRResourceCategory, BloomFilter> filters = new EnumMap<FHIRResourceCategory, BloomFilter>(FHIRResourceCategory.class);
+        int count = in.readUnsignedByte();
+        FHIRResourceCategory category;
+        for (int i = 0; i < count; i++) {
+            try {
+                category = FHIRResourceCategory.valueOf(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid digest: " + e.getMessage());
+            }
+            filters.put(category, BloomFilter.readFrom(in));
+        }
+
+        return new ResourceDigest(filters);
+    }
+
+    /**
+     * Method used to serialize the digest to send it to a peer.
+     *
+     * @return the serialized digest.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(filters.size());
+            for (Map.Entry<FHIRResourceCategory, BloomFilter> e : filters.entrySet()) {
+                out.writeUTF(e.getKey().name());
+                e.getValue().writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     *
+     * @param resource: a resource to be sent.
+     * @return true if the same version of the resource is (probably) held by the peer.
+     */
+    public boolean contains(Resource resource) {
+        String key = versionKeyOf(resource);
+        if (key == null)
+            return false;
+
+        BloomFilter filter = filters.get(ResourceClassifier.getFHIRCategory(resource));
+        return filter != null && filter.mightContain(key);
+    }
+
+    /**
+     *
+     * @return the categories having at least one resource in the digest.
+     */
+    public Set<FHIRResourceCategory> getCategories() {
+        return Collections.unmodifiableSet(filters.keySet());
+    }
+
+    /**
+     *
+     * @param resource: a resource.
+     * @return the key identifying the version of the resource ("Type/id|version"), or null if
+     *         the resource has no id or no version.
+     */
+    public static String versionKeyOf(Resource resource) {
+        if (resource == null || !resource.hasIdElement() || !resource.getIdElement().hasIdPart())
+            return null;
+
+        String version = null;
+        if (resource.getIdElement().hasVersionIdPart())
+            version = resource.getIdElement().getVersionIdPart();
+        else if (resource.hasMeta() && resource.getMeta().hasVersionId())
+            version = resource.getMeta().getVersionId();
+        else if (resource.hasMeta() && resource.getMeta().hasLastUpdated())
+            version = Long.toString(resource.getMeta().getLastUpdated().getTime());
+
+        if (version == null)
+            return null;
+
+        return resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart() + "|" + version;
+    }
+
+}
@@ -0,0 +1,68 @@
+package eu.interopehrate.protocols.common;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.StringType;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Utility class used to add to a Bundle, and to read from it, the sync token of
+ *               a delta synchronization (as extensions of Bundle.meta, since a Bundle cannot
+ *               have extensions). The token is opaque for the client: it is returned by
+ *               the server with the changed resources and it must be sent back to retrieve the
+ *               changes that happened later. The full sync flag is set when the server could
+ *               not use the token provided by the client (for instance because it was issued
+ *               before a reset of the data), so the Bundle contains all the resources and the
+ *               client must replace its copy of the data.
+ */
+public final class SyncTokens {
+
+    public static final String SYNC_TOKEN_EXT_NAME = "http://interopehrate.eu/fhir/StructureDefinition/SyncToken-IEHR";
+    public static final String FULL_SYNC_EXT_NAME = "http://interopehrate.eu/fhir/StructureDefinition/FullSync-IEHR";
+
+    private SyncTokens() {}
+
+    /**
+     * Method used to add the sync token to a Bundle, replacing the existing one.
+     *
+     * @param bundle: the Bundle containing the changed resources.
+     * @param syncToken: the token identifying the state of the data returned in the Bundle.
+     * @param fullSync: true if the Bundle contains all the resources.
+     */
+    public static void setSyncToken(Bundle bundle, String syncToken, boolean fullSync) {
+        if (bundle == null || syncToken == null)
+            throw new IllegalArgumentException("Invalid arguments: the bundle and the sync token cannot be null.");
+
+        Meta meta = bundle.getMeta();
+        meta.removeExtension(SYNC_TOKEN_EXT_NAME);
+        meta.removeExtension(FULL_SYNC_EXT_NAME);
+        meta.addExtension(new Extension(SYNC_TOKEN_EXT_NAME, new StringType(syncToken)));
+        if (fullSync)
+            meta.addExtension(new Extension(FULL_SYNC_EXT_NAME, new BooleanType(true)));
+    }
+
+    /**
+     *
+     * @param bundle: a Bundle returned by a delta synchronization.
+     * @return the sync token contained in the Bundle, or null if not present.
+     */
+    public static String getSyncToken(Bundle bundle) {
+        Extension ext = bundle == null || !bundle.hasMeta() ? null : bundle.getMeta().getExtensionByUrl(SYNC_TOKEN_EXT_NAME);
+        return ext == null || ext.getValue() == null ? null : ext.getValue().primitiveValue();
+    }
+
+    /**
+     *
+     * @param bundle: a Bundle returned by a delta synchronization.
+     * @return true if the Bundle contains all the resources instead of the changes.
+     */
+    public static boolean isFullSync(Bundle bundle) {
+        Extension ext = bundle == null || !bundle.hasMeta() ? null : bundle.getMeta().getExtensionByUrl(FULL_SYNC_EXT_NAME);
+        return ext != null && ext.getValue() != null && "true".equals(ext.getValue().primitiveValue());
+    }
+
+}
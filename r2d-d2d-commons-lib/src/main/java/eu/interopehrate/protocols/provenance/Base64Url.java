@@ -0,0 +1,86 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.util.Arrays;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Base64 encoding with URL and filename safe alphabet and without padding, as
+ *               required by JWS (RFC 7515). Implemented here because java.util.Base64 is not
+ *               available on the Java 7 / older Android baseline of the library.
+ */
+final class Base64Url {
+
+	private static final char[] ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final int[] VALUES = new int[128];
+
+	static {
+		Arrays.fill(VALUES, -1);
+		for (int i = 0; i < ALPHABET.length; i++)
+			VALUES[ALPHABET[i]] = i;
+	}
+
+	private Base64Url() {}
+
+	static String encode(byte[] data) {
+		StringBuilder sb = new StringBuilder((data.length * 4 + 2) / 3);
+		int i = 0;
+		int bits;
+		for (; i + 2 < data.length; i += 3) {
+			bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+			sb.append(ALPHABET[bits >>> 18 & 0x3F]).append(ALPHABET[bits >>> 12 & 0x3F])
+					.append(ALPHABET[bits >>> 6 & 0x3F]).append(ALPHABET[bits & 0x3F]);
+		}
+
+		int remaining = data.length - i;
+		if (remaining == 1) {
+			bits = (data[i] & 0xFF) << 16;
+			sb.append(ALPHABET[bits >>> 18 & 0x3F]).append(ALPHABET[bits >>> 12 & 0x3F]);
+		} else if (remaining == 2) {
+			bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8;
+			sb.append(ALPHABET[bits >>> 18 & 0x3F]).append(ALPHABET[bits >>> 12 & 0x3F])
+					.append(ALPHABET[bits >>> 6 & 0x3F]);
+		}
+
+		return sb.toString();
+	}
+
+	static byte[] decode(String text) {
+		if (text.length() % 4 == 1)
+			throw new IllegalArgumentException("Invalid base64url length: " + text.length());
+
+		byte[] data = new byte[text.length() * 3 / 4];
+		int bits = 0;
+		int count = 0;
+		int pos = 0;
+		int value;
+		char c;
+		for (int i = 0; i < text.length(); i++) {
+			c = text.charAt(i);
+			value = c < 128 ? VALUES[c] : -1;
+			if (value < 0)
+				throw new IllegalArgumentException("Invalid base64url character: " + c);
+
+			bits = bits << 6 | value;
+			if (++count == 4) {
+				data[pos++] = (byte) (bits >>> 16);
+				data[pos++] = (byte) (bits >>> 8);
+				data[pos++] = (byte) bits;
+				bits = 0;
+				count = 0;
+			}
+		}
+
+		if (count == 2) {
+			data[pos] = (byte) (bits >>> 4);
+		} else if (count == 3) {
+			data[pos++] = (byte) (bits >>> 10);
+			data[pos] = (byte) (bits >>> 2);
+		}
+
+		return data;
+	}
+
+}
@@ -12,8 +12,11 @@ import org.hl7.fhir.r4.model.Medication;
 import org.hl7.fhir.r4.model.MedicationRequest;
 import org.hl7.fhir.r4.model.MedicationStatement;
 import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 
+import java.util.List;
+
 /**
  *  Author: Engineering S.p.A. (www.eng.it)
  *  Project: InteropEHRate - www.interopehrate.eu
@@ -25,38 +28,30 @@ public class BundleNode extends ResourceNode {
 		super(resource);
 	}
 
-	@Override
-	public void loadChildren(ResourceNode root) {
-		ResourceType resourceType;
-		Bundle bundle = (Bundle)resource;
-		ResourceNode n;
-
-		for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
-			resourceType = entry.getResource().getResourceType();
-			if (!NodeFactory.isAllowed(resourceType))
-				continue;
-
-			if (entry.getResource().getId() == null)
-				continue;
-
-			n = root.searchNodeByResourceId(entry.getResource().getId());
-			if (n == null) {
-				n = NodeFactory.createNode(entry.getResource());
-				n.loadChildren(this);
-				n.setParent(this);
-			}
+	static final ChildExtractor CHILD_EXTRACTOR = new ChildExtractor() {
+		@Override
+		public void extractChildren(Resource resource, List<Resource> childResources) {
+			Bundle bundle = (Bundle)resource;
+
+			for (Bundle.BundleEntryComponent entry : bundle.getEntry())
+				childResources.add(entry.getResource());
 		}
+	};
+
+	/*
+	 * An entry already referenced by another resource of the Bundle stays under that resource
+	 */
+	@Override
+	boolean claimsExistingChildren() {
+		return false;
 	}
 
-	public void print4Debug(int level) {
+	@Override
+	String toDebugString(int level) {
 		StringBuilder spaces = new StringBuilder();
 		for (int i = 1; i < level; i++)
 			spaces.append("   ");
 
-		System.out.println(spaces.toString() + resource.getResourceType().toString());
-
-		level++;
-		for (ResourceNode n : children)
-			n.print4Debug(level);
+		return spaces.toString() + resource.getResourceType().toString();
 	}
 }
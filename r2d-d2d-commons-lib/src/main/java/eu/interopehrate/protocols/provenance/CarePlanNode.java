@@ -3,10 +3,11 @@ package eu.interopehrate.protocols.provenance;
 import org.hl7.fhir.r4.model.CarePlan;
 import org.hl7.fhir.r4.model.CarePlan.CarePlanActivityComponent;
 import org.hl7.fhir.r4.model.DomainResource;
-import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Provenance;
 import org.hl7.fhir.r4.model.Resource;
 
+import java.util.List;
+
 /**
  *  Author: Engineering S.p.A. (www.eng.it)
  *  Project: InteropEHRate - www.interopehrate.eu
@@ -19,45 +20,25 @@ public class CarePlanNode extends ResourceNode {
         super(resource);
     }
 
-    @Override
-    public void loadChildren(ResourceNode root) {
-        CarePlan carePlan = (CarePlan) resource;
-
-        Resource currentResource;
-        for (CarePlanActivityComponent act : carePlan.getActivity()) {
-            currentResource = (Resource) act.getReference().getResource();
-            if (currentResource == null)
-                continue;
-
-            if (!NodeFactory.isAllowed(currentResource.getResourceType()))
-                continue;
+    static final ChildExtractor CHILD_EXTRACTOR = new ChildExtractor() {
+        @Override
+        public void extractChildren(Resource resource, List<Resource> childResources) {
+            CarePlan carePlan = (CarePlan) resource;
 
-            if (currentResource.getId() == null)
-                continue;
-
-            ResourceNode n = root.searchNodeByResourceId(currentResource.getId());
-            if (n == null) {
-                n = NodeFactory.createNode(currentResource);
-                n.loadChildren(this);
-            }
-            n.setParent(this);
+            for (CarePlanActivityComponent act : carePlan.getActivity())
+                childResources.add((Resource) act.getReference().getResource());
         }
-    }
+    };
 
-    Provenance addProvenance(DomainResource provider) {
+    @Override
+    Provenance addProvenance(DomainResource provider, ProvenanceBatch batch) {
         CarePlan carePlan = (CarePlan) resource;
 
         DomainResource author = provider;
         if (carePlan.getAuthor() != null)
             author = (DomainResource) carePlan.getAuthor().getResource();
-        // creates the Provenance
-        Provenance provenance = ProvenanceBuilder.build(carePlan, author, provider);
-        // adds extension to children
-        Extension provExt = carePlan.getExtensionByUrl(ProvenanceBuilder.PROV_EXT_NAME);
-        for (ResourceNode child : children)
-            child.addProvenanceExtension(provExt);
-
-        return provenance;
+
+        return addProvenance(author, provider, batch);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.List;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Extracts from a resource the referenced resources that must be represented as
+ *               children of its node. Extractors are registered in NodeFactory by resource type.
+ */
+public interface ChildExtractor {
+
+	/**
+	 * Method used to add to the provided list the resources referenced by a resource. Null
+	 * values, resources without id and resources of a type not allowed by NodeFactory are
+	 * ignored by the caller, so they do not need to be filtered.
+	 *
+	 * @param resource: the resource whose children must be extracted.
+	 * @param children: the list where the referenced resources must be added.
+	 */
+	void extractChildren(Resource resource, List<Resource> children);
+
+}
@@ -3,11 +3,12 @@ package eu.interopehrate.protocols.provenance;
 import org.hl7.fhir.r4.model.Composition;
 import org.hl7.fhir.r4.model.Composition.SectionComponent;
 import org.hl7.fhir.r4.model.DomainResource;
-import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Provenance;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 
+import java.util.List;
+
 /**
  *  Author: Engineering S.p.A. (www.eng.it)
  *  Project: InteropEHRate - www.interopehrate.eu
@@ -20,48 +21,27 @@ public class CompositionNode extends ResourceNode {
 		super(resource);
 	}
 
-	@Override
-	public void loadChildren(ResourceNode root) {
-		Composition composition = (Composition) resource;
-
-		Resource currentResource;
-		for (SectionComponent currentSection : composition.getSection()) {
-
-			for (Reference currentRef : currentSection.getEntry()) {
-				currentResource = (Resource) currentRef.getResource();
-				if (currentResource == null)
-					continue;
+	static final ChildExtractor CHILD_EXTRACTOR = new ChildExtractor() {
+		@Override
+		public void extractChildren(Resource resource, List<Resource> childResources) {
+			Composition composition = (Composition) resource;
 
-				if (!NodeFactory.isAllowed(currentResource.getResourceType()))
-					continue;
-
-				if (currentResource.getId() == null)
-					continue;
-
-				ResourceNode n = root.searchNodeByResourceId(currentResource.getId());
-				if (n == null) {
-					n = NodeFactory.createNode(currentResource);
-					n.loadChildren(this);
-				}
-				n.setParent(this);
+			for (SectionComponent currentSection : composition.getSection()) {
+				for (Reference currentRef : currentSection.getEntry())
+					childResources.add((Resource) currentRef.getResource());
 			}
 		}
-	}
+	};
 
-	Provenance addProvenance(DomainResource provider) {
+	@Override
+	Provenance addProvenance(DomainResource provider, ProvenanceBatch batch) {
 		Composition composition = (Composition)resource;
 
 		DomainResource author = provider;
 		if (composition.getAuthor().size() > 0)
 			author = (DomainResource)composition.getAuthorFirstRep().getResource();
-		// creates the Provenance
-		Provenance provenance = ProvenanceBuilder.build(composition, author, provider);
-		// adds extension to children
-		Extension provExt = composition.getExtensionByUrl(ProvenanceBuilder.PROV_EXT_NAME);
-		for (ResourceNode child : children)
-			child.addProvenanceExtension(provExt);
 
-		return provenance;
+		return addProvenance(author, provider, batch);
 	}
 	
 }
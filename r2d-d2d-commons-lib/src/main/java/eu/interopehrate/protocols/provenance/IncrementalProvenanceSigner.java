@@ -0,0 +1,279 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Provenance;
+import org.hl7.fhir.r4.model.Reference;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Signs a Bundle that is shared many times with small changes between two
+ *               shares. The signer keeps the content hash of every resource and the Provenance
+ *               of every signed container of the last share: when the Bundle is signed again
+ *               only the resources whose canonical form changed are marked as dirty, and only
+ *               the containers affected by a dirty resource are updated and signed again.
+ *               Containers that did not change keep their Provenance (and its signature).
+ *
+ *               Without Merkle mode the signature of a container covers only its canonical
+ *               form, so a container is signed again only when it changes itself (for
+ *               instance when a result is added to a DiagnosticReport); in Merkle mode it is
+ *               signed again when any of its descendants changes.
+ *
+ *  Usage:
+ *
+ *  IncrementalProvenanceSigner signer = new IncrementalProvenanceSigner(provenanceSigner, provider, false);
+ *  signer.sign(aFhirBundle);
+ *  // the bundle is modified
+ *  signer.sign(aFhirBundle);
+ *
+ */
+public class IncrementalProvenanceSigner {
+
+	private final ProvenanceSigner signer;
+	private final DomainResource provider;
+	private final boolean merkle;
+
+	// state of the last share
+	private Map<String, byte[]> contentHashes = new HashMap<String, byte[]>();
+	private Map<String, Provenance> provenances = new HashMap<String, Provenance>();
+	private int dirtyCount;
+	private int signedCount;
+
+	/**
+	 *
+	 * @param signer: the signer used to compute the signatures.
+	 * @param provider: the provider of the resources.
+	 * @param merkle: true to sign in Merkle mode (see ProvenanceSigner.signMerkle).
+	 */
+	public IncrementalProvenanceSigner(ProvenanceSigner signer, DomainResource provider, boolean merkle) {
+		if (signer == null || provider == null)
+			throw new IllegalArgumentException("Invalid arguments: the signer and the provider cannot be null.");
+
+		this.signer = signer;
+		this.provider = provider;
+		this.merkle = merkle;
+	}
+
+	/**
+	 * Method used to sign a Bundle, updating only what changed since the last invocation.
+	 * The Provenances of the previous share contained in the Bundle are replaced by the
+	 * current ones.
+	 *
+	 * @param bundle: the bundle to be signed.
+	 * @return the Provenances of all the signed containers, already added to the Bundle.
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public synchronized List<Provenance> sign(Bundle bundle) throws GeneralSecurityException {
+		if (bundle == null)
+			throw new IllegalArgumentException("Invalid argument: the bundle to be signed cannot be null.");
+
+		ResourceNode root = new ResourceTreeBuilder().build(bundle);
+		List<ResourceNode> signedNodes = ProvenanceBuilder.getSignedNodes(root);
+		MessageDigest sha = MerkleTree.newDigest();
+
+		// 1. detects the resources whose canonical form changed
+		Set<ResourceNode> dirty = newNodeSet();
+		List<ResourceNode> nodes = collect(signedNodes);
+		byte[] previous;
+		for (ResourceNode node : nodes) {
+			node.contentHash = MerkleTree.contentHash(node.resource, sha);
+			previous = contentHashes.get(node.resource.getId());
+			if (previous == null || !Arrays.equals(previous, node.contentHash))
+				dirty.add(node);
+		}
+		dirtyCount = dirty.size();
+
+		// 2. finds the containers affected by the dirty resources
+		ProvenanceBatch batch = new ProvenanceBatch();
+		Map<String, Provenance> current = new HashMap<String, Provenance>();
+		Map<ResourceNode, Provenance> toUpdate = new IdentityHashMap<ResourceNode, Provenance>();
+		List<Provenance> toSign = new ArrayList<Provenance>();
+		List<ResourceNode> toSignNodes = new ArrayList<ResourceNode>();
+		List<Provenance> result = new ArrayList<Provenance>(signedNodes.size());
+		Provenance provenance;
+		for (ResourceNode node : signedNodes) {
+			provenance = provenances.get(node.resource.getId());
+			if (provenance == null) {
+				provenance = node.addProvenance(provider, batch);
+				toUpdate.put(node, provenance);
+				toSign.add(provenance);
+				toSignNodes.add(node);
+			} else if (isDirty(node, dirty)) {
+				toUpdate.put(node, provenance);
+				if (merkle || dirty.contains(node)) {
+					provenance.setRecorded(batch.getRecorded());
+					provenance.getSignatureFirstRep().setWhen(batch.getRecorded());
+					toSign.add(provenance);
+					toSignNodes.add(node);
+				}
+			}
+			// the resource may be a new instance with the same content
+			provenance.getTargetFirstRep().setResource(node.resource);
+			current.put(node.resource.getId(), provenance);
+			result.add(provenance);
+		}
+
+		// 3. updates the provenance extensions of the affected containers and of their descendants
+		updateExtensions(toUpdate, current);
+		for (ResourceNode node : toUpdate.keySet()) {
+			for (ResourceNode n : collect(Collections.singletonList(node)))
+				n.contentHash = MerkleTree.contentHash(n.resource, sha);
+		}
+
+		// 4. signs again only the affected containers
+		List<byte[]> payloads = null;
+		if (merkle) {
+			payloads = new ArrayList<byte[]>(toSign.size());
+			for (int i = 0; i < toSign.size(); i++) {
+				payloads.add(MerkleTree.computeDigests(toSignNodes.get(i)));
+				toSign.get(i).getSignatureFirstRep().setTargetFormat(MerkleTree.TARGET_FORMAT);
+			}
+		}
+		signer.sign(toSign, payloads);
+		signedCount = toSign.size();
+
+		// 5. replaces the Provenances in the Bundle and stores the state of this share
+		replaceProvenances(bundle, result);
+		Map<String, byte[]> hashes = new HashMap<String, byte[]>(nodes.size() * 2);
+		for (ResourceNode node : nodes)
+			hashes.put(node.resource.getId(), node.contentHash);
+		contentHashes = hashes;
+		provenances = current;
+
+		return result;
+	}
+
+	/**
+	 *
+	 * @return the number of resources found changed by the last invocation of sign.
+	 */
+	public synchronized int getDirtyCount() {
+		return dirtyCount;
+	}
+
+	/**
+	 *
+	 * @return the number of Provenances signed by the last invocation of sign.
+	 */
+	public synchronized int getSignedCount() {
+		return signedCount;
+	}
+
+	/*
+	 * Adds the missing provenance extensions to the descendants of the updated containers and
+	 * removes the extensions referencing the Provenance of a container that no longer
+	 * contains the resource.
+	 */
+	private void updateExtensions(Map<ResourceNode, Provenance> toUpdate, Map<String, Provenance> current) {
+		// Provenances managed by this signer, the extensions referencing other ones are preserved
+		Set<Provenance> managed = Collections.newSetFromMap(new IdentityHashMap<Provenance, Boolean>());
+		managed.addAll(provenances.values());
+		managed.addAll(current.values());
+
+		Map<ResourceNode, List<Provenance>> expected = new IdentityHashMap<ResourceNode, List<Provenance>>();
+		List<Provenance> list;
+		for (Map.Entry<ResourceNode, Provenance> e : toUpdate.entrySet()) {
+			for (ResourceNode n : collect(Collections.singletonList(e.getKey()))) {
+				list = expected.get(n);
+				if (list == null) {
+					list = new ArrayList<Provenance>(1);
+					expected.put(n, list);
+				}
+				list.add(e.getValue());
+			}
+		}
+
+		DomainResource resource;
+		Extension ext;
+		for (Map.Entry<ResourceNode, List<Provenance>> e : expected.entrySet()) {
+			resource = (DomainResource) e.getKey().resource;
+			for (Iterator<Extension> it = resource.getExtension().iterator(); it.hasNext(); ) {
+				ext = it.next();
+				if (ProvenanceBuilder.PROV_EXT_NAME.equals(ext.getUrl()) && isStale(ext, managed, e.getValue()))
+					it.remove();
+			}
+
+			for (Provenance p : e.getValue()) {
+				if (!ProvenanceBuilder.hasProvenanceExtension(resource, p))
+					resource.addExtension(new Extension(ProvenanceBuilder.PROV_EXT_NAME, new Reference(p)));
+			}
+		}
+	}
+
+	private static boolean isStale(Extension ext, Set<Provenance> managed, List<Provenance> expected) {
+		for (Provenance p : expected) {
+			if (ProvenanceBuilder.references(ext, p))
+				return false;
+		}
+
+		for (Provenance p : managed) {
+			if (ProvenanceBuilder.references(ext, p))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static boolean isDirty(ResourceNode node, final Set<ResourceNode> dirty) {
+		return ResourceTreeWalker.walk(node, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode n, int depth) {
+				return !dirty.contains(n);
+			}
+		}) != null;
+	}
+
+	/*
+	 * Returns the nodes of the trees starting from the provided nodes
+	 */
+	private static List<ResourceNode> collect(List<ResourceNode> roots) {
+		final List<ResourceNode> nodes = new ArrayList<ResourceNode>();
+		for (ResourceNode root : roots) {
+			ResourceTreeWalker.walk(root, new ResourceNodeVisitor() {
+				@Override
+				public boolean visit(ResourceNode n, int depth) {
+					nodes.add(n);
+					return true;
+				}
+			});
+		}
+
+		return nodes;
+	}
+
+	private void replaceProvenances(Bundle bundle, List<Provenance> result) {
+		Set<Provenance> previous = Collections.newSetFromMap(new IdentityHashMap<Provenance, Boolean>());
+		previous.addAll(provenances.values());
+		previous.addAll(result);
+
+		List<Bundle.BundleEntryComponent> entries = new ArrayList<Bundle.BundleEntryComponent>(bundle.getEntry().size());
+		for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+			if (!previous.contains(entry.getResource()))
+				entries.add(entry);
+		}
+		bundle.setEntry(entries);
+
+		for (Provenance p : result)
+			bundle.addEntry().setResource(p);
+	}
+
+	private static Set<ResourceNode> newNodeSet() {
+		return Collections.newSetFromMap(new IdentityHashMap<ResourceNode, Boolean>());
+	}
+
+}
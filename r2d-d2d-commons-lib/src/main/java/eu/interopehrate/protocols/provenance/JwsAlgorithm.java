@@ -0,0 +1,109 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.security.Key;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: JWS algorithms (RFC 7518) supported for the signature of a Provenance.
+ */
+enum JwsAlgorithm {
+
+	RS256("SHA256withRSA"),
+	ES256("SHA256withECDSA");
+
+	private static final int ES256_COORDINATE_SIZE = 32;
+
+	private final String javaName;
+
+	JwsAlgorithm(String javaName) {
+		this.javaName = javaName;
+	}
+
+	/*
+	 * Name of the algorithm for java.security.Signature
+	 */
+	String getJavaName() {
+		return javaName;
+	}
+
+	static JwsAlgorithm forKey(Key key) {
+		if (key instanceof RSAKey)
+			return RS256;
+		else if (key instanceof ECKey)
+			return ES256;
+
+		throw new IllegalArgumentException("Unsupported key algorithm: " + key.getAlgorithm()
+				+ ", only RSA and EC keys can be used.");
+	}
+
+	/*
+	 * Converts the signature produced by java.security.Signature to the format used by JWS
+	 */
+	byte[] toJws(byte[] signature) {
+		if (this != ES256)
+			return signature;
+
+		// DER: SEQUENCE { INTEGER r, INTEGER s } -> r || s
+		byte[] jws = new byte[2 * ES256_COORDINATE_SIZE];
+		int offset = (signature[1] & 0x80) != 0 ? 3 : 2;
+		int rLength = signature[offset + 1];
+		copyUnsigned(signature, offset + 2, rLength, jws, 0);
+		offset += 2 + rLength;
+		int sLength = signature[offset + 1];
+		copyUnsigned(signature, offset + 2, sLength, jws, ES256_COORDINATE_SIZE);
+
+		return jws;
+	}
+
+	/*
+	 * Converts a JWS signature to the format used by java.security.Signature
+	 */
+	byte[] fromJws(byte[] signature) {
+		if (this != ES256)
+			return signature;
+
+		if (signature.length != 2 * ES256_COORDINATE_SIZE)
+			throw new IllegalArgumentException("Invalid ES256 signature length: " + signature.length);
+
+		byte[] r = toDerInteger(signature, 0);
+		byte[] s = toDerInteger(signature, ES256_COORDINATE_SIZE);
+		int length = r.length + s.length;
+		byte[] der = new byte[length + 2];
+		der[0] = 0x30;
+		der[1] = (byte) length;
+		System.arraycopy(r, 0, der, 2, r.length);
+		System.arraycopy(s, 0, der, 2 + r.length, s.length);
+
+		return der;
+	}
+
+	private static void copyUnsigned(byte[] src, int from, int length, byte[] dest, int to) {
+		// strips the sign byte and left pads with zeros
+		while (length > ES256_COORDINATE_SIZE && src[from] == 0) {
+			from++;
+			length--;
+		}
+		System.arraycopy(src, from, dest, to + ES256_COORDINATE_SIZE - length, length);
+	}
+
+	private static byte[] toDerInteger(byte[] src, int from) {
+		int start = from;
+		int end = from + ES256_COORDINATE_SIZE;
+		while (start < end - 1 && src[start] == 0)
+			start++;
+
+		int length = end - start;
+		boolean padding = (src[start] & 0x80) != 0;
+		byte[] der = new byte[length + (padding ? 3 : 2)];
+		der[0] = 0x02;
+		der[1] = (byte) (length + (padding ? 1 : 0));
+		System.arraycopy(src, start, der, padding ? 3 : 2, length);
+
+		return der;
+	}
+
+}
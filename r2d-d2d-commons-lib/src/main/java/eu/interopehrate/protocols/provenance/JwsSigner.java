@@ -0,0 +1,86 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Computes JWS signatures with detached payload (RFC 7515, appendix F) using a
+ *               private key available locally (for instance in a software keystore). RSA keys
+ *               produce RS256 signatures, EC keys (P-256) produce ES256 signatures.
+ *               This class is thread safe.
+ */
+public class JwsSigner {
+
+	static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final PrivateKey key;
+	private final JwsAlgorithm algorithm;
+	private final String encodedHeader;
+
+	public JwsSigner(PrivateKey key) {
+		this(key, null);
+	}
+
+	/**
+	 *
+	 * @param key: the private key used to sign.
+	 * @param keyId: optional identifier of the key, added as "kid" to the JWS header.
+	 */
+	public JwsSigner(PrivateKey key, String keyId) {
+		if (key == null)
+			throw new IllegalArgumentException("Invalid argument: the key cannot be null.");
+
+		this.key = key;
+		this.algorithm = JwsAlgorithm.forKey(key);
+
+		StringBuilder header = new StringBuilder("{\"alg\":\"").append(algorithm.name()).append('"');
+		if (keyId != null)
+			header.append(",\"kid\":\"").append(keyId.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		header.append('}');
+		this.encodedHeader = Base64Url.encode(header.toString().getBytes(ResourceCanonicalizer.UTF_8));
+	}
+
+	/**
+	 * Method used to create a signer using a private key stored in a KeyStore.
+	 *
+	 * @param keyStore: the loaded keystore containing the key.
+	 * @param alias: the alias of the key.
+	 * @param password: the password protecting the key.
+	 * @return the signer, the alias is used as key identifier.
+	 * @throws GeneralSecurityException if the key cannot be recovered
+	 */
+	public static JwsSigner fromKeyStore(KeyStore keyStore, String alias, char[] password)
+			throws GeneralSecurityException {
+		Key key = keyStore.getKey(alias, password);
+		if (!(key instanceof PrivateKey))
+			throw new GeneralSecurityException("No private key found with alias " + alias);
+
+		return new JwsSigner((PrivateKey) key, alias);
+	}
+
+	/**
+	 * Method used to sign a payload.
+	 *
+	 * @param payload: the content to be signed.
+	 * @return the JWS in compact serialization, with the payload detached
+	 *         (&lt;header&gt;..&lt;signature&gt;).
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public String sign(byte[] payload) throws GeneralSecurityException {
+		String signingInput = encodedHeader + "." + Base64Url.encode(payload);
+
+		Signature signature = Signature.getInstance(algorithm.getJavaName());
+		signature.initSign(key);
+		signature.update(signingInput.getBytes(ASCII));
+
+		return encodedHeader + ".." + Base64Url.encode(algorithm.toJws(signature.sign()));
+	}
+
+}
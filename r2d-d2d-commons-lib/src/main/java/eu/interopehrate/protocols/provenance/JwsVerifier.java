@@ -0,0 +1,72 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Verifies JWS signatures with detached payload produced by JwsSigner.
+ *               This class is thread safe.
+ */
+public class JwsVerifier {
+
+	private static final Pattern ALG = Pattern.compile("\"alg\"\\s*:\\s*\"([^\"]*)\"");
+
+	private final PublicKey key;
+	private final JwsAlgorithm algorithm;
+
+	/**
+	 *
+	 * @param key: the public key matching the private key used to sign.
+	 */
+	public JwsVerifier(PublicKey key) {
+		if (key == null)
+			throw new IllegalArgumentException("Invalid argument: the key cannot be null.");
+
+		this.key = key;
+		this.algorithm = JwsAlgorithm.forKey(key);
+	}
+
+	/**
+	 * Method used to verify a JWS with detached payload.
+	 *
+	 * @param jws: the JWS in compact serialization, with the payload detached.
+	 * @param payload: the signed content.
+	 * @return true if the signature is valid for the provided payload.
+	 * @throws SignatureException if the JWS cannot be decoded
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public boolean verify(String jws, byte[] payload) throws GeneralSecurityException {
+		int first = jws.indexOf('.');
+		int last = jws.lastIndexOf('.');
+		if (first < 0 || last != first + 1)
+			return false;
+
+		String encodedHeader = jws.substring(0, first);
+		Matcher alg;
+		byte[] signatureValue;
+		try {
+			alg = ALG.matcher(new String(Base64Url.decode(encodedHeader), ResourceCanonicalizer.UTF_8));
+			signatureValue = algorithm.fromJws(Base64Url.decode(jws.substring(last + 1)));
+		} catch (IllegalArgumentException e) {
+			throw new SignatureException("Invalid JWS: " + e.getMessage());
+		}
+
+		// the algorithm is determined by the key, the header cannot change it
+		if (!alg.find() || !algorithm.name().equals(alg.group(1)))
+			return false;
+
+		Signature signature = Signature.getInstance(algorithm.getJavaName());
+		signature.initVerify(key);
+		signature.update((encodedHeader + "." + Base64Url.encode(payload)).getBytes(JwsSigner.ASCII));
+
+		return signature.verify(signatureValue);
+	}
+
+}
@@ -1,10 +1,10 @@
 package eu.interopehrate.protocols.provenance;
 
-import org.hl7.fhir.r4.model.DomainResource;
-import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Medication;
 import org.hl7.fhir.r4.model.MedicationStatement;
-import org.hl7.fhir.r4.model.Provenance;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.List;
 
 public class MedicationStatementNode extends ResourceNode {
 
@@ -13,43 +13,16 @@ public class MedicationStatementNode extends ResourceNode {
         this.resource = resource;
     }
 
-    @Override
-    public void loadChildren(ResourceNode root) {
-        MedicationStatement ms = (MedicationStatement)resource;
-
-        if (ms.getMedicationReference() == null)
-            return;
-
-        Medication medication = (Medication)ms.getMedicationReference().getResource();
-        if (medication == null)
-            return;
+    static final ChildExtractor CHILD_EXTRACTOR = new ChildExtractor() {
+        @Override
+        public void extractChildren(Resource resource, List<Resource> childResources) {
+            MedicationStatement ms = (MedicationStatement)resource;
 
-        if (!NodeFactory.isAllowed(medication.getResourceType()))
-            return;
+            if (!ms.hasMedicationReference())
+                return;
 
-        if (medication.getId() == null)
-            return;
-
-        ResourceNode n = root.searchNodeByResourceId(medication.getId());
-        if (n == null) {
-            n = NodeFactory.createNode(medication);
-            n.loadChildren(this);
+            childResources.add((Medication)ms.getMedicationReference().getResource());
         }
-        n.setParent(this);
-    }
-
-
-    Provenance addProvenance(DomainResource provider) {
-        MedicationStatement ms = (MedicationStatement)resource;
-
-        // creates the Provenance
-        Provenance provenance = ProvenanceBuilder.build(ms, provider, provider);
-        // adds extension to children
-        Extension provExt = ms.getExtensionByUrl(ProvenanceBuilder.PROV_EXT_NAME);
-        for (ResourceNode child : children)
-            child.addProvenanceExtension(provExt);
-
-        return provenance;
-    }
+    };
 
 }
\ No newline at end of file
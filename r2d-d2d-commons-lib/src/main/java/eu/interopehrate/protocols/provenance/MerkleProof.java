@@ -0,0 +1,131 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Proof linking a resource to the Merkle digest of one of its containers, created
+ *               by MerkleTree.createProof and used by MerkleTree.computeRoot. For every level
+ *               between the resource and the container the proof contains the content hash of
+ *               the container at that level and the siblings needed to compute the root of its
+ *               children. The proof can be exchanged as a string (see encode and decode).
+ */
+public class MerkleProof {
+
+	private final byte[] leafChildrenRoot;
+	private final List<Level> levels = new ArrayList<Level>();
+
+	MerkleProof(byte[] leafChildrenRoot) {
+		this.leafChildrenRoot = leafChildrenRoot;
+	}
+
+	byte[] getLeafChildrenRoot() {
+		return leafChildrenRoot;
+	}
+
+	List<Level> getLevels() {
+		return Collections.unmodifiableList(levels);
+	}
+
+	void addLevel(Level level) {
+		levels.add(level);
+	}
+
+	/**
+	 *
+	 * @return the number of levels between the resource and the signed container.
+	 */
+	public int getDepth() {
+		return levels.size();
+	}
+
+	/**
+	 * Method used to encode the proof as a string.
+	 *
+	 * @return the base64url encoding of the proof.
+	 */
+	public String encode() {
+		int size = MerkleTree.DIGEST_SIZE + 2;
+		for (Level level : levels)
+			size += MerkleTree.DIGEST_SIZE + 1 + level.siblings.size() * (MerkleTree.DIGEST_SIZE + 1);
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(leafChildrenRoot);
+		buffer.putShort((short) levels.size());
+		for (Level level : levels) {
+			buffer.put(level.contentHash);
+			buffer.put((byte) level.siblings.size());
+			for (int i = 0; i < level.siblings.size(); i++) {
+				buffer.put((byte) (level.onLeft.get(i) ? 1 : 0));
+				buffer.put(level.siblings.get(i));
+			}
+		}
+
+		return Base64Url.encode(buffer.array());
+	}
+
+	/**
+	 * Method used to decode a proof encoded with encode().
+	 *
+	 * @param encoded: the encoded proof.
+	 * @return the decoded proof.
+	 */
+	public static MerkleProof decode(String encoded) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Base64Url.decode(encoded));
+			MerkleProof proof = new MerkleProof(read(buffer));
+			int levels = buffer.getShort() & 0xFFFF;
+			Level level;
+			int siblings;
+			for (int i = 0; i < levels; i++) {
+				level = new Level(read(buffer));
+				siblings = buffer.get() & 0xFF;
+				for (int j = 0; j < siblings; j++) {
+					boolean onLeft = buffer.get() != 0;
+					level.add(read(buffer), onLeft);
+				}
+				proof.levels.add(level);
+			}
+
+			if (buffer.hasRemaining())
+				throw new IllegalArgumentException("Invalid Merkle proof: unexpected trailing data.");
+
+			return proof;
+		} catch (RuntimeException e) {
+			if (e instanceof IllegalArgumentException)
+				throw e;
+			throw new IllegalArgumentException("Invalid Merkle proof.", e);
+		}
+	}
+
+	private static byte[] read(ByteBuffer buffer) {
+		byte[] digest = new byte[MerkleTree.DIGEST_SIZE];
+		buffer.get(digest);
+		return digest;
+	}
+
+	/*
+	 * A level of the proof: the content hash of a container and the siblings of the path
+	 * from one of its children to the root of its children
+	 */
+	static final class Level {
+		final byte[] contentHash;
+		final List<byte[]> siblings = new ArrayList<byte[]>();
+		final List<Boolean> onLeft = new ArrayList<Boolean>();
+
+		Level(byte[] contentHash) {
+			this.contentHash = contentHash;
+		}
+
+		void add(byte[] sibling, boolean left) {
+			siblings.add(sibling);
+			onLeft.add(left);
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Computes the Merkle digests of a tree of ResourceNode, used by the Merkle
+ *               provenance mode. The digest of a node covers the canonical form of its resource
+ *               and the digests of its children:
+ *
+ *               contentHash  = SHA-256(0x00 | canonical form of the resource)
+ *               digest       = SHA-256(0x01 | contentHash | childrenRoot)
+ *
+ *               where childrenRoot is the root of a binary Merkle tree built on the digests of
+ *               the children (SHA-256(0x02 | left | right), an odd digest is promoted to the
+ *               upper level, 32 zero bytes if the node has no children).
+ *               When the signature of a Provenance covers the digest of the signed container,
+ *               a single descendant can be verified with a MerkleProof, whose size grows with
+ *               the depth of the descendant and with the logarithm of the number of siblings.
+ */
+public final class MerkleTree {
+
+	public static final String TARGET_FORMAT = "application/vnd.interopehrate.merkle-sha256";
+
+	static final int DIGEST_SIZE = 32;
+
+	private static final byte CONTENT_PREFIX = 0x00;
+	private static final byte NODE_PREFIX = 0x01;
+	private static final byte PAIR_PREFIX = 0x02;
+	private static final byte[] EMPTY_ROOT = new byte[DIGEST_SIZE];
+
+	private MerkleTree() {}
+
+	/**
+	 * Method used to compute the digests of all the nodes of a tree. Digests (and content
+	 * hashes) already computed are not computed again.
+	 *
+	 * @param root: the root of the tree.
+	 * @return the digest of the root.
+	 */
+	public static byte[] computeDigests(ResourceNode root) {
+		MessageDigest sha = newDigest();
+
+		// post order visit with an explicit stack: a node is hashed after all its children
+		ArrayDeque<ResourceNode> stack = new ArrayDeque<ResourceNode>();
+		ArrayDeque<Integer> nextChild = new ArrayDeque<Integer>();
+		stack.push(root);
+		nextChild.push(0);
+
+		ResourceNode node;
+		int next;
+		while (!stack.isEmpty()) {
+			node = stack.peek();
+			next = nextChild.pop();
+			if (node.digest == null && next < node.getChildren().size()) {
+				nextChild.push(next + 1);
+				ResourceNode child = node.getChildren().get(next);
+				if (child.digest == null) {
+					stack.push(child);
+					nextChild.push(0);
+				}
+				continue;
+			}
+
+			stack.pop();
+			if (node.digest == null)
+				hashNode(node, sha);
+		}
+
+		return root.digest.clone();
+	}
+
+	/**
+	 * Method used to create the proof linking a descendant of a node to the digest of the node.
+	 * Digests must have already been computed.
+	 *
+	 * @param root: the node whose digest has been signed.
+	 * @param resourceId: the id of the resource to be proven.
+	 * @return the proof, or null if the resource is not a descendant of the root.
+	 */
+	public static MerkleProof createProof(ResourceNode root, final String resourceId) {
+		if (root.digest == null)
+			throw new IllegalStateException("Digests must be computed before creating a proof.");
+
+		// finds the path from the root to the node
+		final List<ResourceNode> path = new ArrayList<ResourceNode>();
+		ResourceNode leaf = ResourceTreeWalker.walk(root, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode node, int depth) {
+				while (path.size() > depth)
+					path.remove(path.size() - 1);
+				path.add(node);
+				return node.resource == null || !resourceId.equals(node.resource.getId());
+			}
+		});
+
+		if (leaf == null)
+			return null;
+
+		MessageDigest sha = newDigest();
+		MerkleProof proof = new MerkleProof(childrenRoot(leaf, sha));
+		ResourceNode parent;
+		ResourceNode child;
+		for (int i = path.size() - 1; i > 0; i--) {
+			child = path.get(i);
+			parent = path.get(i - 1);
+			proof.addLevel(auditPath(parent, parent.getChildren().indexOf(child), sha));
+		}
+
+		return proof;
+	}
+
+	/**
+	 * Method used to compute the digest of the root of a tree, starting from one of its
+	 * descendants and from the proof of the descendant.
+	 *
+	 * @param leaf: the resource to be verified.
+	 * @param proof: the proof of the resource.
+	 * @return the digest of the root.
+	 */
+	public static byte[] computeRoot(Resource leaf, MerkleProof proof) {
+		MessageDigest sha = newDigest();
+		byte[] current = nodeDigest(contentHash(leaf, sha), proof.getLeafChildrenRoot(), sha);
+
+		byte[] sibling;
+		for (MerkleProof.Level level : proof.getLevels()) {
+			for (int i = 0; i < level.siblings.size(); i++) {
+				sibling = level.siblings.get(i);
+				current = level.onLeft.get(i) ? pair(sibling, current, sha) : pair(current, sibling, sha);
+			}
+			current = nodeDigest(level.contentHash, current, sha);
+		}
+
+		return current;
+	}
+
+	private static void hashNode(ResourceNode node, MessageDigest sha) {
+		if (node.contentHash == null)
+			node.contentHash = contentHash(node.resource, sha);
+		node.digest = nodeDigest(node.contentHash, childrenRoot(node, sha), sha);
+	}
+
+	static byte[] contentHash(Resource resource, MessageDigest sha) {
+		sha.update(CONTENT_PREFIX);
+		sha.update(ResourceCanonicalizer.canonicalize(resource));
+		return sha.digest();
+	}
+
+	private static byte[] nodeDigest(byte[] contentHash, byte[] childrenRoot, MessageDigest sha) {
+		sha.update(NODE_PREFIX);
+		sha.update(contentHash);
+		sha.update(childrenRoot);
+		return sha.digest();
+	}
+
+	private static byte[] pair(byte[] left, byte[] right, MessageDigest sha) {
+		sha.update(PAIR_PREFIX);
+		sha.update(left);
+		sha.update(right);
+		return sha.digest();
+	}
+
+	private static byte[] childrenRoot(ResourceNode node, MessageDigest sha) {
+		List<ResourceNode> children = node.getChildren();
+		if (children.isEmpty())
+			return EMPTY_ROOT;
+
+		byte[][] layer = new byte[children.size()][];
+		for (int i = 0; i < layer.length; i++)
+			layer[i] = children.get(i).digest;
+
+		while (layer.length > 1)
+			layer = nextLayer(layer, sha);
+
+		return layer[0];
+	}
+
+	private static byte[][] nextLayer(byte[][] layer, MessageDigest sha) {
+		byte[][] next = new byte[(layer.length + 1) / 2][];
+		for (int i = 0; i < layer.length; i += 2)
+			next[i / 2] = i + 1 < layer.length ? pair(layer[i], layer[i + 1], sha) : layer[i];
+
+		return next;
+	}
+
+	/*
+	 * Siblings needed to compute the children root of parent from the digest of the child
+	 * at the provided index
+	 */
+	private static MerkleProof.Level auditPath(ResourceNode parent, int index, MessageDigest sha) {
+		MerkleProof.Level level = new MerkleProof.Level(parent.contentHash);
+
+		List<ResourceNode> children = parent.getChildren();
+		byte[][] layer = new byte[children.size()][];
+		for (int i = 0; i < layer.length; i++)
+			layer[i] = children.get(i).digest;
+
+		while (layer.length > 1) {
+			if (index % 2 == 1)
+				level.add(layer[index - 1], true);
+			else if (index + 1 < layer.length)
+				level.add(layer[index + 1], false);
+
+			layer = nextLayer(layer, sha);
+			index /= 2;
+		}
+
+		return level;
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+}
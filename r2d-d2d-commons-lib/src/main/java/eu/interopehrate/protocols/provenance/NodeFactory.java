@@ -3,50 +3,70 @@ package eu.interopehrate.protocols.provenance;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CarePlan;
 import org.hl7.fhir.r4.model.Composition;
-import org.hl7.fhir.r4.model.Condition;
 import org.hl7.fhir.r4.model.DiagnosticReport;
-import org.hl7.fhir.r4.model.DocumentReference;
-import org.hl7.fhir.r4.model.Encounter;
-import org.hl7.fhir.r4.model.Media;
-import org.hl7.fhir.r4.model.Medication;
-import org.hl7.fhir.r4.model.MedicationRequest;
 import org.hl7.fhir.r4.model.MedicationStatement;
-import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  *  Author: Engineering S.p.A. (www.eng.it)
  *  Project: InteropEHRate - www.interopehrate.eu
  *
- *  Description: Factory class for creating nodes from FHIR resources.
+ *  Description: Factory class for creating nodes from FHIR resources. The allowed types and
+ *               the extractors of the children of every type are kept in tables indexed by
+ *               ResourceType, so checking a type and dispatching a resource cost O(1).
+ *               New types (or new ways of traversing an allowed type) can be added by
+ *               registering a ChildExtractor, without changing the node classes.
  *
  *  Usage:
  *
- *  ResourceNode root = NodeFactory.createNode(aFhirBundle);
- *  root.loadChildren();
+ *  ResourceNode root = new ResourceTreeBuilder().build(aFhirBundle);
  *
  *  for (ResourceNode child : root.getChildren()) {
  *      child.getResource().doSomething();
  *  }
  *
+ *  NodeFactory.register(ResourceType.Observation, new ChildExtractor() {
+ *      public void extractChildren(Resource resource, List<Resource> children) {
+ *          for (Reference ref : ((Observation) resource).getHasMember())
+ *              children.add((Resource) ref.getResource());
+ *      }
+ *  });
+ *
  */
 public class NodeFactory {
 
-	static ResourceType[] allowedTypes = {
-			(new Bundle()).getResourceType(),
-			(new Observation()).getResourceType(),
-			(new DocumentReference()).getResourceType(),
-			(new Media()).getResourceType(),
-			(new Condition()).getResourceType(),
-			(new Medication()).getResourceType(),
-			(new MedicationStatement()).getResourceType(),
-			(new MedicationRequest()).getResourceType(),
-			(new Encounter()).getResourceType(),
-			(new DiagnosticReport()).getResourceType(),
-			(new Composition()).getResourceType(),
-			(new CarePlan()).getResourceType(),
-	};
+	// tables replaced (never modified) on registration, so they can be read without locking
+	private static volatile Set<ResourceType> allowedTypes = EnumSet.of(
+			ResourceType.Bundle,
+			ResourceType.Observation,
+			ResourceType.DocumentReference,
+			ResourceType.Media,
+			ResourceType.Condition,
+			ResourceType.Medication,
+			ResourceType.MedicationStatement,
+			ResourceType.MedicationRequest,
+			ResourceType.Encounter,
+			ResourceType.DiagnosticReport,
+			ResourceType.Composition,
+			ResourceType.CarePlan);
+
+	private static volatile Map<ResourceType, ChildExtractor> extractors;
+
+	static {
+		Map<ResourceType, ChildExtractor> map = new EnumMap<ResourceType, ChildExtractor>(ResourceType.class);
+		map.put(ResourceType.Bundle, BundleNode.CHILD_EXTRACTOR);
+		map.put(ResourceType.Composition, CompositionNode.CHILD_EXTRACTOR);
+		map.put(ResourceType.DiagnosticReport, DiagnosticReportNode.CHILD_EXTRACTOR);
+		map.put(ResourceType.CarePlan, CarePlanNode.CHILD_EXTRACTOR);
+		map.put(ResourceType.MedicationStatement, MedicationStatementNode.CHILD_EXTRACTOR);
+		extractors = map;
+	}
 
 	/**
 	 *
@@ -57,18 +77,20 @@ public class NodeFactory {
 		if (!isAllowed(resource.getResourceType()))
 			throw new IllegalStateException(resource.getResourceType() + " cannot be represente as a node!");
 
-		if (resource instanceof DiagnosticReport)
-			return new DiagnosticReportNode((DiagnosticReport)resource);
-		else if (resource instanceof Composition)
-			return new CompositionNode((Composition)resource);
-		else if (resource instanceof Bundle)
-			return new BundleNode((Bundle)resource);
-		else if (resource instanceof CarePlan)
-			return new CarePlanNode((CarePlan)resource);
-		else if (resource instanceof MedicationStatement)
-			return new MedicationStatementNode((MedicationStatement)resource);
-		else
-			return new ResourceNode(resource);
+		switch (resource.getResourceType()) {
+			case DiagnosticReport:
+				return new DiagnosticReportNode((DiagnosticReport)resource);
+			case Composition:
+				return new CompositionNode((Composition)resource);
+			case Bundle:
+				return new BundleNode((Bundle)resource);
+			case CarePlan:
+				return new CarePlanNode((CarePlan)resource);
+			case MedicationStatement:
+				return new MedicationStatementNode((MedicationStatement)resource);
+			default:
+				return new ResourceNode(resource);
+		}
 	}
 
 	/**
@@ -77,12 +99,43 @@ public class NodeFactory {
 	 * @return
 	 */
 	public static boolean isAllowed(ResourceType resourceType) {
-		for (ResourceType c : allowedTypes) {
-			if (c.equals(resourceType))
-				return true;
-		}
+		return resourceType != null && allowedTypes.contains(resourceType);
+	}
+
+	/**
+	 * Method used to allow a resource type to be represented as a node and to define how
+	 * the resources it references are found. Registering a type already allowed replaces
+	 * its extractor, so it can also be used to traverse more references of a type (for
+	 * instance Observation.hasMember or DocumentReference.context.encounter).
+	 *
+	 * @param resourceType: the type to be allowed.
+	 * @param extractor: the extractor of the children of the type, null if the resources
+	 *                   of the type must be leaves of the tree.
+	 */
+	public static synchronized void register(ResourceType resourceType, ChildExtractor extractor) {
+		if (resourceType == null)
+			throw new IllegalArgumentException("Invalid argument: the resource type cannot be null.");
+
+		Map<ResourceType, ChildExtractor> newExtractors = new EnumMap<ResourceType, ChildExtractor>(extractors);
+		if (extractor == null)
+			newExtractors.remove(resourceType);
+		else
+			newExtractors.put(resourceType, extractor);
+
+		Set<ResourceType> newTypes = EnumSet.copyOf(allowedTypes);
+		newTypes.add(resourceType);
 
-		return false;
+		extractors = newExtractors;
+		allowedTypes = newTypes;
+	}
+
+	/**
+	 *
+	 * @param resourceType
+	 * @return the extractor of the children of the type, null if the type has no children.
+	 */
+	public static ChildExtractor getChildExtractor(ResourceType resourceType) {
+		return extractors.get(resourceType);
 	}
 
 }
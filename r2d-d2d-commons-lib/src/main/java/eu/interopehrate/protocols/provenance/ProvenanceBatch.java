@@ -0,0 +1,77 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Reference;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Values shared by all the Provenances created in a single signing pass: the
+ *               recorded date, the profile and the agent and signature types. HAPI elements
+ *               are mutable, so every call returns a new element holding the shared values and
+ *               a Provenance can be modified without affecting the others of the batch.
+ */
+final class ProvenanceBatch {
+
+	static final String PROVENANCE_PROFILE = "http://interopehrate.eu/fhir/StructureDefinition/Provenance-IEHR";
+
+	private final long recorded;
+
+	// ids are derived from a single random UUID, to avoid a call to the secure random per id
+	private final long idHigh;
+	private final long idLow;
+	private int idCounter;
+
+	ProvenanceBatch() {
+		recorded = System.currentTimeMillis();
+
+		UUID base = UUID.randomUUID();
+		idHigh = base.getMostSignificantBits();
+		idLow = base.getLeastSignificantBits();
+	}
+
+	Meta newProfile() {
+		Meta profile = new Meta();
+		profile.addProfile(PROVENANCE_PROFILE);
+		return profile;
+	}
+
+	CodeableConcept newAuthorType() {
+		return new CodeableConcept(new Coding(ProvenanceBuilder.PROV_PARTICIPANT_TYPE, "author", "Author"));
+	}
+
+	CodeableConcept newProviderType() {
+		return new CodeableConcept(new Coding(ProvenanceBuilder.PROV_PARTICIPANT_TYPE, "custodian", "Custodian"));
+	}
+
+	Coding newSignatureType() {
+		return new Coding("urn:iso-astm:E1762-95:2013",
+				"1.2.840.10065.1.12.1.5",
+				"Verification Signature");
+	}
+
+	Date getRecorded() {
+		return new Date(recorded);
+	}
+
+	Reference newReference(DomainResource participant) {
+		return new Reference(participant);
+	}
+
+	/*
+	 * Returns a new id, unique within the batch and (as it is derived from a random UUID)
+	 * among different batches.
+	 */
+	String nextId() {
+		// only the lower 32 bits are changed, variant and version of the UUID are preserved
+		return new UUID(idHigh, idLow ^ (idCounter++ & 0xFFFFFFFFL)).toString();
+	}
+
+}
@@ -1,13 +1,8 @@
 package eu.interopehrate.protocols.provenance;
 
 import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.CodeableConcept;
-import org.hl7.fhir.r4.model.Coding;
-import org.hl7.fhir.r4.model.Composition;
-import org.hl7.fhir.r4.model.DiagnosticReport;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Extension;
-import org.hl7.fhir.r4.model.Meta;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Practitioner;
@@ -17,11 +12,9 @@ import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Signature;
 
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
-
-import ca.uhn.fhir.model.primitive.IdDt;
 
 /**
  *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
@@ -49,44 +42,75 @@ public class ProvenanceBuilder {
             throw new IllegalArgumentException("Invalid arguments: the resource to be signed, "
                     + "the author and the provider cannot be null.");
 
-        // Checks for valid author and provider
-        if (!(author instanceof Organization || author instanceof Practitioner ||
-                author instanceof PractitionerRole || author instanceof Patient))
-            throw new IllegalArgumentException("Invalid author: must be an instance of "
-                    + " Organization or Practitioner or "
-                    + " PractitionerRole or Patient");
+        return build(resourceToSign, author, provider, new ProvenanceBatch());
+    }
 
-        if (!(provider instanceof Organization || provider instanceof Practitioner ||
-                provider instanceof PractitionerRole || provider instanceof Patient))
-            throw new IllegalArgumentException("Invalid author: must be an instance of "
-                    + " Organization or Practitioner or "
-                    + " PractitionerRole or Patient");
+    /**
+     * Method used to sign in a single pass all the resources contained in a Bundle. A Provenance
+     * is created for every root container (or standalone resource) of the Bundle and propagated
+     * to its children, exactly like {@link #build(DomainResource, DomainResource, DomainResource)}
+     * would do for each of them. All the created Provenances have the same recorded date, profile
+     * and agent and signature types, each one in its own elements. The created Provenances are
+     * added as entries to the Bundle.
+     *
+     * @param bundle: the bundle containing the resources to be signed.
+     * @param provider: the provider of the resources, used as author if a container does not
+     *                provide its own author.
+     * @return the list of created Provenances.
+     */
+    public static List<Provenance> build(Bundle bundle, DomainResource provider) {
+        if (bundle == null || provider == null)
+            throw new IllegalArgumentException("Invalid arguments: the bundle to be signed "
+                    + "and the provider cannot be null.");
+
+        return build(bundle, new ResourceTreeBuilder().build(bundle), provider);
+    }
+
+    /*
+     * Signs the resources of a Bundle whose tree of nodes has already been built
+     */
+    static List<Provenance> build(Bundle bundle, ResourceNode root, DomainResource provider) {
+        checkParticipant(provider);
+
+        ProvenanceBatch batch = new ProvenanceBatch();
+        List<Provenance> provenances = new ArrayList<Provenance>();
+        for (ResourceNode node : getSignedNodes(root))
+            provenances.add(node.addProvenance(provider, batch));
+
+        for (Provenance provenance : provenances)
+            bundle.addEntry().setResource(provenance);
+
+        return provenances;
+    }
+
+    /*
+     * Creates the Provenance using the elements shared by the provided batch
+     */
+    static Provenance build(DomainResource resourceToSign, DomainResource author,
+                            DomainResource provider, ProvenanceBatch batch) {
+        // Checks for valid author and provider
+        checkParticipant(author);
+        checkParticipant(provider);
 
         // 1. create the Provenance instance and assigns an ID to it
         Provenance prov = new Provenance();
-        prov.setId(UUID.randomUUID().toString());
+        prov.setId(batch.nextId());
 
         // 1.1 Adds the profile, target and recorded to the Provenance
-        Meta profile = new Meta();
-        profile.addProfile("http://interopehrate.eu/fhir/StructureDefinition/Provenance-IEHR");
-        prov.setMeta(profile);
+        prov.setMeta(batch.newProfile());
         prov.addTarget(new Reference(resourceToSign));
-        prov.setRecorded(new Date());
+        prov.setRecorded(batch.getRecorded());
 
         // 1.2 Adds the author to the Provenance
         Provenance.ProvenanceAgentComponent authorAgent = new Provenance.ProvenanceAgentComponent();
-        CodeableConcept authorType = new CodeableConcept(
-                new Coding(PROV_PARTICIPANT_TYPE, "author", "Author"));
-        authorAgent.setType(authorType);
-        authorAgent.setWho(new Reference(author));
+        authorAgent.setType(batch.newAuthorType());
+        authorAgent.setWho(batch.newReference(author));
         prov.addAgent(authorAgent);
 
         // 1.3 Adds the provider to the Provenance
         Provenance.ProvenanceAgentComponent providerAgent = new Provenance.ProvenanceAgentComponent();
-        CodeableConcept providerType = new CodeableConcept(
-                new Coding(PROV_PARTICIPANT_TYPE, "custodian", "Custodian"));
-        providerAgent.setType(providerType);
-        providerAgent.setWho(new Reference(provider));
+        providerAgent.setType(batch.newProviderType());
+        providerAgent.setWho(batch.newReference(provider));
         prov.addAgent(providerAgent);
 
         // 1.4 sets the reference from the resourceToSign to the Provenance
@@ -98,12 +122,10 @@ public class ProvenanceBuilder {
 
         // creates the Signature element
         Signature signature = new Signature();
-        signature.setId(UUID.randomUUID().toString());
-        signature.setWho(new Reference(provider));
-        signature.addType(new Coding("urn:iso-astm:E1762-95:2013",
-                "1.2.840.10065.1.12.1.5",
-                "Verification Signature"));
-        signature.setWhen(new Date());
+        signature.setId(batch.nextId());
+        signature.setWho(batch.newReference(provider));
+        signature.addType(batch.newSignatureType());
+        signature.setWhen(batch.getRecorded());
         signature.setTargetFormat("json");
         signature.setSigFormat("application/jose");
 
@@ -113,6 +135,99 @@ public class ProvenanceBuilder {
         return prov;
     }
 
+    /*
+     * Returns the nodes that get their own Provenance: the entries of the Bundle that are not
+     * contained by another resource. Nested Bundles are not signed, their entries are.
+     */
+    static List<ResourceNode> getSignedNodes(ResourceNode root) {
+        List<ResourceNode> signedNodes = new ArrayList<ResourceNode>();
+        ArrayDeque<ResourceNode> bundles = new ArrayDeque<ResourceNode>();
+        bundles.push(root);
+        while (!bundles.isEmpty()) {
+            for (ResourceNode node : bundles.pop().getChildren()) {
+                if (node instanceof BundleNode)
+                    bundles.push(node);
+                else
+                    signedNodes.add(node);
+            }
+        }
+
+        return signedNodes;
+    }
+
+    /*
+     * Returns true if the resource has a provenance extension referencing the provided Provenance
+     */
+    static boolean hasProvenanceExtension(DomainResource resource, Provenance provenance) {
+        for (Extension ext : resource.getExtension()) {
+            if (PROV_EXT_NAME.equals(ext.getUrl()) && references(ext, provenance))
+                return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * Returns true if the resource has a provenance extension referencing the same Provenance
+     * referenced by provExt
+     */
+    static boolean hasProvenanceExtension(DomainResource resource, Extension provExt) {
+        if (!(provExt.getValue() instanceof Reference))
+            return false;
+
+        Reference ref = (Reference) provExt.getValue();
+        if (ref.getResource() instanceof Provenance)
+            return hasProvenanceExtension(resource, (Provenance) ref.getResource());
+
+        for (Extension ext : resource.getExtension()) {
+            if (ext == provExt)
+                return true;
+            if (PROV_EXT_NAME.equals(ext.getUrl()) && ext.getValue() instanceof Reference
+                    && ref.hasReference() && ref.getReference().equals(((Reference) ext.getValue()).getReference()))
+                return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * Returns the provenance extension of the resource referencing the provided Provenance
+     */
+    static Extension getProvenanceExtension(DomainResource resource, Provenance provenance) {
+        for (Extension ext : resource.getExtension()) {
+            if (PROV_EXT_NAME.equals(ext.getUrl()) && references(ext, provenance))
+                return ext;
+        }
+
+        return null;
+    }
+
+    /*
+     * Returns true if the provided provenance extension references the provided Provenance
+     */
+    static boolean references(Extension provExt, Provenance provenance) {
+        if (!(provExt.getValue() instanceof Reference))
+            return false;
+
+        Reference ref = (Reference) provExt.getValue();
+        if (ref.getResource() != null)
+            return ref.getResource() == provenance;
+
+        return ref.hasReference() && provenance.getIdElement().getIdPart() != null
+                && provenance.getIdElement().getIdPart().equals(ref.getReferenceElement().getIdPart());
+    }
+
+    /*
+     * Checks that the provided resource can be the author or the provider of a Provenance
+     */
+    private static void checkParticipant(DomainResource participant) {
+        if (!(participant instanceof Organization || participant instanceof Practitioner ||
+                participant instanceof PractitionerRole || participant instanceof Patient))
+            throw new IllegalArgumentException("Invalid author: must be an instance of "
+                    + " Organization or Practitioner or "
+                    + " PractitionerRole or Patient");
+    }
+
     /**
      * Method used to add to a resource (resourceToSign) getting the Provenance form an already
      * signed resource (signedResource).
@@ -123,6 +238,9 @@ public class ProvenanceBuilder {
      * @param resourceToSign
      */
     public static void addProvenanceExtension(DomainResource signedResource, DomainResource resourceToSign) {
-        resourceToSign.addExtension(signedResource.getExtensionByUrl(PROV_EXT_NAME));
+        for (Extension provExt : signedResource.getExtensionsByUrl(PROV_EXT_NAME)) {
+            if (!hasProvenanceExtension(resourceToSign, provExt))
+                resourceToSign.addExtension(provExt);
+        }
     }
 }
@@ -0,0 +1,215 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Provenance;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.Signature;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Computes the data of the Signature of Provenances created by ProvenanceBuilder.
+ *               The target of every Provenance is canonicalized and signed with a detached JWS.
+ *               Provenances are independent of each other, so they are signed in parallel on
+ *               a ForkJoinPool.
+ *
+ *  Usage:
+ *
+ *  ProvenanceSigner signer = new ProvenanceSigner(new JwsSigner(privateKey));
+ *  List<Provenance> provenances = signer.sign(aFhirBundle, provider);
+ *
+ */
+public class ProvenanceSigner {
+
+	// below this number of Provenances the signature is computed by the current task
+	private static final int SEQUENTIAL_THRESHOLD = 4;
+
+	private final JwsSigner signer;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a signer using a pool shared by all the signers, sized on the number of cores.
+	 *
+	 * @param signer: the signer used to compute the JWS.
+	 */
+	public ProvenanceSigner(JwsSigner signer) {
+		this(signer, SharedForkJoinPool.get());
+	}
+
+	/**
+	 *
+	 * @param signer: the signer used to compute the JWS.
+	 * @param pool: the pool used to compute the signatures.
+	 */
+	public ProvenanceSigner(JwsSigner signer, ForkJoinPool pool) {
+		if (signer == null || pool == null)
+			throw new IllegalArgumentException("Invalid arguments: the signer and the pool cannot be null.");
+
+		this.signer = signer;
+		this.pool = pool;
+	}
+
+	/**
+	 * Method used to create and sign the Provenances of all the resources of a Bundle.
+	 *
+	 * @param bundle: the bundle containing the resources to be signed.
+	 * @param provider: the provider of the resources.
+	 * @return the list of created and signed Provenances, already added to the Bundle.
+	 * @throws GeneralSecurityException in case of failure
+	 * @see ProvenanceBuilder#build(Bundle, DomainResource)
+	 */
+	public List<Provenance> sign(Bundle bundle, DomainResource provider) throws GeneralSecurityException {
+		List<Provenance> provenances = ProvenanceBuilder.build(bundle, provider);
+		sign(provenances);
+
+		return provenances;
+	}
+
+	/**
+	 * Method used to create and sign the Provenances of all the resources of a Bundle in Merkle
+	 * mode: the signature of every Provenance covers the Merkle digest of the signed container
+	 * (see MerkleTree), so each descendant of the container can be verified on its own
+	 * with a MerkleProof.
+	 *
+	 * @param bundle: the bundle containing the resources to be signed.
+	 * @param provider: the provider of the resources.
+	 * @return the list of created and signed Provenances, already added to the Bundle.
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public List<Provenance> signMerkle(Bundle bundle, DomainResource provider) throws GeneralSecurityException {
+		if (bundle == null || provider == null)
+			throw new IllegalArgumentException("Invalid arguments: the bundle to be signed "
+					+ "and the provider cannot be null.");
+
+		ResourceTreeBuilder tree = new ResourceTreeBuilder();
+		ResourceNode root = tree.build(bundle);
+		List<Provenance> provenances = ProvenanceBuilder.build(bundle, root, provider);
+
+		// digests are computed once all the provenance extensions have been added
+		List<byte[]> payloads = new ArrayList<byte[]>(provenances.size());
+		Resource target;
+		for (Provenance provenance : provenances) {
+			target = (Resource) provenance.getTargetFirstRep().getResource();
+			payloads.add(MerkleTree.computeDigests(tree.getNode(target.getId())));
+			provenance.getSignatureFirstRep().setTargetFormat(MerkleTree.TARGET_FORMAT);
+		}
+		sign(provenances, payloads);
+
+		return provenances;
+	}
+
+	/**
+	 * Method used to compute, in parallel, the signature of the provided Provenances.
+	 *
+	 * @param provenances: the provenances to be signed.
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public void sign(List<Provenance> provenances) throws GeneralSecurityException {
+		sign(provenances, null);
+	}
+
+	/*
+	 * Signs the provided payloads, or the canonical form of the targets if payloads is null
+	 */
+	void sign(List<Provenance> provenances, List<byte[]> payloads) throws GeneralSecurityException {
+		if (provenances.size() <= SEQUENTIAL_THRESHOLD) {
+			for (int i = 0; i < provenances.size(); i++)
+				sign(provenances.get(i), payloads != null ? payloads.get(i) : null);
+			return;
+		}
+
+		try {
+			pool.invoke(new SignTask(provenances, payloads, 0, provenances.size()));
+		} catch (SigningException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Method used to compute the signature of a Provenance.
+	 *
+	 * @param provenance: the provenance to be signed, its target must contain the signed resource.
+	 * @throws GeneralSecurityException in case of failure
+	 */
+	public void sign(Provenance provenance) throws GeneralSecurityException {
+		sign(provenance, null);
+	}
+
+	private void sign(Provenance provenance, byte[] payload) throws GeneralSecurityException {
+		if (!provenance.hasSignature())
+			throw new IllegalArgumentException("Invalid provenance " + provenance.getId()
+					+ ": the provenance does not have a signature.");
+
+		if (payload == null) {
+			Resource target = (Resource) provenance.getTargetFirstRep().getResource();
+			if (target == null)
+				throw new IllegalArgumentException("Invalid provenance " + provenance.getId()
+						+ ": the target does not contain the signed resource.");
+			payload = ResourceCanonicalizer.canonicalize(target);
+		}
+
+		Signature signature = provenance.getSignatureFirstRep();
+		signature.setData(signer.sign(payload).getBytes(JwsSigner.ASCII));
+	}
+
+	/*
+	 * Splits the list of Provenances until it is small enough to be signed sequentially
+	 */
+	private final class SignTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Provenance> provenances;
+		private final List<byte[]> payloads;
+		private final int from;
+		private final int to;
+
+		private SignTask(List<Provenance> provenances, List<byte[]> payloads, int from, int to) {
+			this.provenances = provenances;
+			this.payloads = payloads;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				try {
+					for (int i = from; i < to; i++)
+						sign(provenances.get(i), payloads != null ? payloads.get(i) : null);
+				} catch (GeneralSecurityException e) {
+					throw new SigningException(e);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new SignTask(provenances, payloads, from, middle),
+					new SignTask(provenances, payloads, middle, to));
+		}
+	}
+
+	/*
+	 * Carries a checked exception out of a ForkJoinTask
+	 */
+	private static final class SigningException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private SigningException(GeneralSecurityException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized GeneralSecurityException getCause() {
+			return (GeneralSecurityException) super.getCause();
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Provenance;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Verifies the provenance of the resources contained in a Bundle received from
+ *               a peer. Every resource is linked to its Provenance through the extension
+ *               ProvenanceBuilder.PROV_EXT_NAME, the target of the Provenance is canonicalized
+ *               again and the signature is verified. Distinct Provenances are verified in
+ *               parallel on a ForkJoinPool.
+ *               Outcomes are cached by the hash of the canonical target and of the signature,
+ *               so resources received again without changes are not verified twice.
+ *               Provenances signed in Merkle mode are verified against the Merkle digest of the
+ *               target, single resources can be verified with a MerkleProof.
+ *               Only in Merkle mode the signature covers the content of the descendants of the
+ *               target: otherwise they are reported as CONTAINED_NOT_SIGNED.
+ *
+ *  Usage:
+ *
+ *  ProvenanceVerifier verifier = new ProvenanceVerifier(publicKey);
+ *  for (VerificationResult result : verifier.verify(aReceivedBundle)) {
+ *      if (!result.isVerified())
+ *          doSomething(result.getResourceId());
+ *  }
+ *
+ */
+public class ProvenanceVerifier {
+
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	private static final int SEQUENTIAL_THRESHOLD = 4;
+
+	private final JwsVerifier verifier;
+	private final ForkJoinPool pool;
+	private final Map<String, Boolean> cache;
+
+	public ProvenanceVerifier(PublicKey key) {
+		this(key, SharedForkJoinPool.get(), DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 *
+	 * @param key: the public key of the signer.
+	 * @param pool: the pool used to verify the signatures.
+	 * @param cacheSize: max number of outcomes kept in the cache.
+	 */
+	public ProvenanceVerifier(PublicKey key, ForkJoinPool pool, final int cacheSize) {
+		if (pool == null)
+			throw new IllegalArgumentException("Invalid argument: the pool cannot be null.");
+
+		this.verifier = new JwsVerifier(key);
+		this.pool = pool;
+		this.cache = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Method used to verify the provenance of all the resources contained in a Bundle.
+	 *
+	 * @param bundle: the received bundle, containing both the resources and their Provenances.
+	 * @return the outcome of the verification of every resource that is not a Provenance, in
+	 *         the same order of the entries of the Bundle.
+	 */
+	public List<VerificationResult> verify(Bundle bundle) {
+		Map<String, Resource> resources = new HashMap<String, Resource>();
+		Map<String, Check> checks = new LinkedHashMap<String, Check>();
+		for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+			if (entry.getResource() == null)
+				continue;
+
+			resources.put(keyOf(entry.getResource()), entry.getResource());
+			if (entry.getResource() instanceof Provenance)
+				checks.put(keyOf(entry.getResource()), new Check((Provenance) entry.getResource()));
+		}
+
+		// resolves the links between resources and Provenances
+		List<Resource> verified = new ArrayList<Resource>();
+		Map<Resource, List<Check>> links = new HashMap<Resource, List<Check>>();
+		List<Check> resourceChecks;
+		for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+			if (!(entry.getResource() instanceof DomainResource) || entry.getResource() instanceof Provenance)
+				continue;
+
+			resourceChecks = new ArrayList<Check>();
+			for (Extension ext : ((DomainResource) entry.getResource()).getExtensionsByUrl(ProvenanceBuilder.PROV_EXT_NAME))
+				resourceChecks.add(resolveProvenance(ext, checks));
+
+			verified.add(entry.getResource());
+			links.put(entry.getResource(), resourceChecks);
+		}
+
+		// verifies the Provenances that are actually referenced
+		List<Check> pending = new ArrayList<Check>();
+		ResourceTreeBuilder tree = null;
+		for (List<Check> list : links.values()) {
+			for (Check check : list) {
+				if (check.provenance == null || check.scheduled)
+					continue;
+
+				check.scheduled = true;
+				check.target = resolveTarget(check.provenance, resources);
+				if (check.target != null) {
+					// the descendants and the Merkle digests are computed once, before verifying in parallel
+					if (tree == null) {
+						tree = new ResourceTreeBuilder();
+						tree.build(bundle);
+					}
+					prepare(check, tree.getNode(check.target.getId()));
+				}
+				pending.add(check);
+			}
+		}
+
+		if (pending.size() <= SEQUENTIAL_THRESHOLD) {
+			for (Check check : pending)
+				check.run();
+		} else
+			pool.invoke(new VerifyTask(pending, 0, pending.size()));
+
+		List<VerificationResult> results = new ArrayList<VerificationResult>(verified.size());
+		for (Resource resource : verified)
+			results.add(toResult(resource, links.get(resource)));
+
+		return results;
+	}
+
+	/**
+	 * Method used to verify a single resource signed in Merkle mode, without the other resources
+	 * of the signed container.
+	 *
+	 * @param resource: the resource to be verified.
+	 * @param proof: the proof linking the resource to the signed container.
+	 * @param provenance: the Provenance of the signed container.
+	 * @return the outcome of the verification.
+	 * @see ProvenanceSigner#signMerkle(Bundle, DomainResource)
+	 */
+	public VerificationResult verify(Resource resource, MerkleProof proof, Provenance provenance) {
+		Check check = new Check(provenance);
+		check.target = resource;
+		if (!isMerkle(provenance)) {
+			check.error = keyOf(provenance) + " has not been signed in Merkle mode";
+		} else {
+			check.merkle = true;
+			check.payload = MerkleTree.computeRoot(resource, proof);
+			check.run();
+		}
+
+		return toResult(resource, Collections.singletonList(check));
+	}
+
+	/**
+	 *
+	 * @return the number of outcomes currently cached.
+	 */
+	public int getCacheSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private VerificationResult toResult(Resource resource, List<Check> resourceChecks) {
+		String id = keyOf(resource);
+		if (resourceChecks.isEmpty())
+			return new VerificationResult(id, VerificationResult.Status.NOT_SIGNED, null, 0);
+
+		long elapsed = 0;
+		VerificationResult.Status status = VerificationResult.Status.CONTAINED_NOT_SIGNED;
+		for (Check check : resourceChecks) {
+			elapsed += check.elapsedNanos;
+			if (!check.valid)
+				return new VerificationResult(id, VerificationResult.Status.FAILED, check.error, elapsed);
+
+			if (check.target == resource) {
+				status = VerificationResult.Status.VERIFIED;
+			} else if (!check.covered.contains(resource)) {
+				// the extension has been copied to a resource that is not a descendant of the target
+				return new VerificationResult(id, VerificationResult.Status.FAILED,
+						id + " is not contained in the target of " + keyOf(check.provenance), elapsed);
+			} else if (check.merkle && status != VerificationResult.Status.VERIFIED) {
+				// in Merkle mode the signature covers the content of the descendants too
+				status = VerificationResult.Status.VERIFIED_BY_CONTAINER;
+			}
+		}
+
+		return new VerificationResult(id, status, null, elapsed);
+	}
+
+	private Check resolveProvenance(Extension ext, Map<String, Check> checks) {
+		if (!(ext.getValue() instanceof Reference))
+			return new Check("the provenance extension does not contain a Reference");
+
+		Reference ref = (Reference) ext.getValue();
+		Check check;
+		if (ref.getResource() instanceof Provenance)
+			check = checks.get(keyOf((Provenance) ref.getResource()));
+		else
+			check = checks.get("Provenance/" + ref.getReferenceElement().getIdPart());
+
+		return check != null ? check : new Check("Provenance " + ref.getReference() + " not found");
+	}
+
+	private static boolean isMerkle(Provenance provenance) {
+		return MerkleTree.TARGET_FORMAT.equals(provenance.getSignatureFirstRep().getTargetFormat());
+	}
+
+	private static void prepare(final Check check, ResourceNode node) {
+		if (node == null)
+			return;
+
+		if (isMerkle(check.provenance)) {
+			check.merkle = true;
+			check.payload = MerkleTree.computeDigests(node);
+		}
+		ResourceTreeWalker.walk(node, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode n, int depth) {
+				check.covered.add(n.getResource());
+				return true;
+			}
+		});
+	}
+
+	private static Resource resolveTarget(Provenance provenance, Map<String, Resource> resources) {
+		Reference target = provenance.getTargetFirstRep();
+		if (target.getResource() instanceof Resource)
+			return (Resource) target.getResource();
+
+		if (!target.hasReference())
+			return null;
+
+		return resources.get(target.getReferenceElement().getResourceType() + "/"
+				+ target.getReferenceElement().getIdPart());
+	}
+
+	private static String keyOf(Resource resource) {
+		return resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
+	}
+
+	/*
+	 * Verification of a single Provenance
+	 */
+	private final class Check {
+		private final Provenance provenance;
+		private Resource target;
+		// the signed content, if it is not the canonical form of the target
+		private byte[] payload;
+		private boolean merkle;
+		// the target and its descendants
+		private final Set<Resource> covered = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+		private boolean scheduled;
+		private boolean valid;
+		private String error;
+		private long elapsedNanos;
+
+		private Check(Provenance provenance) {
+			this.provenance = provenance;
+		}
+
+		private Check(String error) {
+			this.provenance = null;
+			this.error = error;
+		}
+
+		private void run() {
+			long start = System.nanoTime();
+			try {
+				if (target == null) {
+					error = "the target of " + keyOf(provenance) + " is not available";
+				} else if (!provenance.hasSignature() || !provenance.getSignatureFirstRep().hasData()) {
+					error = keyOf(provenance) + " is not signed";
+				} else {
+					verifySignature();
+				}
+			} catch (GeneralSecurityException e) {
+				error = "verification of " + keyOf(provenance) + " failed: " + e.getMessage();
+			} finally {
+				elapsedNanos = System.nanoTime() - start;
+			}
+		}
+
+		private void verifySignature() throws GeneralSecurityException {
+			byte[] payload = this.payload != null ? this.payload : ResourceCanonicalizer.canonicalize(target);
+			byte[] signatureData = provenance.getSignatureFirstRep().getData();
+
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(payload);
+			digest.update(signatureData);
+			String cacheKey = Base64Url.encode(digest.digest());
+
+			Boolean outcome;
+			synchronized (cache) {
+				outcome = cache.get(cacheKey);
+			}
+			if (outcome == null) {
+				outcome = verifier.verify(new String(signatureData, JwsSigner.ASCII), payload);
+				synchronized (cache) {
+					cache.put(cacheKey, outcome);
+				}
+			}
+
+			valid = outcome;
+			if (!valid)
+				error = "the signature of " + keyOf(provenance) + " is not valid";
+		}
+	}
+
+	/*
+	 * Splits the list of Provenances until it is small enough to be verified sequentially
+	 */
+	private static final class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Check> checks;
+		private final int from;
+		private final int to;
+
+		private VerifyTask(List<Check> checks, int from, int to) {
+			this.checks = checks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				for (int i = from; i < to; i++)
+					checks.get(i).run();
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new VerifyTask(checks, from, middle), new VerifyTask(checks, middle, to));
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.nio.charset.Charset;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Produces the canonical form of a resource, that is the content covered by
+ *               the signature of a Provenance. The canonical form is the compact (not pretty
+ *               printed) JSON representation of the resource encoded in UTF-8.
+ *               This class is thread safe, every thread uses its own parser.
+ */
+public final class ResourceCanonicalizer {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<IParser> PARSERS = new ThreadLocal<IParser>() {
+		@Override
+		protected IParser initialValue() {
+			return ContextHolder.CONTEXT.newJsonParser().setPrettyPrint(false);
+		}
+	};
+
+	private ResourceCanonicalizer() {}
+
+	/**
+	 * Method used to produce the canonical form of a resource.
+	 *
+	 * @param resource: the resource to be canonicalized.
+	 * @return the canonical form of the resource.
+	 */
+	public static byte[] canonicalize(Resource resource) {
+		if (resource == null)
+			throw new IllegalArgumentException("Invalid argument: the resource cannot be null.");
+
+		return PARSERS.get().encodeResourceToString(resource).getBytes(UTF_8);
+	}
+
+	/*
+	 * Lazily creates the FhirContext, whose creation is expensive
+	 */
+	private static final class ContextHolder {
+		private static final FhirContext CONTEXT = FhirContext.forR4();
+	}
+
+}
@@ -12,13 +12,19 @@ import java.util.List;
  *  Author: Engineering S.p.A. (www.eng.it)
  *  Project: InteropEHRate - www.interopehrate.eu
  *
- *  Description: Represent a node for a FHIR Resource that is not a container
+ *  Description: Represent a node for a FHIR Resource that is not a container. A resource
+ *               referenced by more than one container (for instance a Medication referenced
+ *               by two MedicationStatements) is represented by a single node having more than
+ *               one parent, so nodes form a directed acyclic graph.
  */
 public class ResourceNode {
 
-	protected ResourceNode parent;
+	protected List<ResourceNode> parents = new ArrayList<ResourceNode>(1);
 	protected Resource resource;
 	protected List<ResourceNode> children = new ArrayList<ResourceNode>();
+	// Merkle digests, computed by MerkleTree
+	byte[] contentHash;
+	byte[] digest;
 
 	ResourceNode (Resource resource) {
 		this.resource = resource;
@@ -28,14 +34,32 @@ public class ResourceNode {
 		return resource;
 	}
 
-	void setParent(ResourceNode parent) {
-		if (this.parent != null)
-			this.parent.removeChild(this);
+	/**
+	 *
+	 * @return the Merkle digest of the node, covering the resource and all its descendants,
+	 *         or null if it has not been computed by MerkleTree.
+	 */
+	public byte[] getDigest() {
+		return digest != null ? digest.clone() : null;
+	}
 
-		this.parent = parent;
+	/*
+	 * Adds a parent to this node, nothing is done if the node is already a child of parent
+	 */
+	void addParent(ResourceNode parent) {
+		for (ResourceNode p : parents) {
+			if (p == parent)
+				return;
+		}
+
+		parents.add(parent);
 		parent.addChild(this);
 	}
 
+	public List<ResourceNode> getParents() {
+		return parents;
+	}
+
 	public List<ResourceNode> getChildren() {
 		return children;
 	}
@@ -51,58 +75,109 @@ public class ResourceNode {
 	/*
 	 *
 	 */
-	ResourceNode searchNodeByResourceId(String id) {
-		if (resource != null && id.equals(resource.getId()))
-			return this;
-		else {
-			ResourceNode n;
-			for (ResourceNode c : children) {
-				n = c.searchNodeByResourceId(id);
-				if (n != null)
-					return n;
+	ResourceNode searchNodeByResourceId(final String id) {
+		return ResourceTreeWalker.walk(this, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode node, int depth) {
+				return node.resource == null || !id.equals(node.resource.getId());
 			}
-		}
+		});
+	}
 
-		return null;
+	/*
+	 * Loads the children of this node, reusing the nodes already present in the tree of root
+	 */
+	public void loadChildren(ResourceNode root) {
+		new ResourceTreeBuilder(root).loadChildren(this);
 	}
 
 	/*
-	 * Default implementation for node that does not have children
+	 * Adds the referenced resources to the list, using the ChildExtractor registered in
+	 * NodeFactory for the type of the resource
 	 */
-	public void loadChildren(ResourceNode root) {}
+	void collectChildren(List<Resource> childResources) {
+		ChildExtractor extractor = NodeFactory.getChildExtractor(resource.getResourceType());
+		if (extractor != null)
+			extractor.extractChildren(resource, childResources);
+	}
+
+	/*
+	 * Returns true if a child already present in the tree must be moved under this node
+	 */
+	boolean claimsExistingChildren() {
+		return true;
+	}
 
 	/*
 	 *
 	 */
 	Provenance addProvenance(DomainResource provider) {
-		return ProvenanceBuilder.build((DomainResource)this.getResource(), provider, provider);
+		return addProvenance(provider, new ProvenanceBatch());
 	}
 
 	/*
-	 *
+	 * Creates the Provenance using the elements shared by all the Provenances of a batch, the
+	 * provider is also the author. Containers override it to take the author from the resource.
 	 */
-	void addProvenanceExtension(Extension provExt) {
-		((DomainResource)resource).addExtension(provExt);
+	Provenance addProvenance(DomainResource provider, ProvenanceBatch batch) {
+		return addProvenance(provider, provider, batch);
+	}
 
-		for (ResourceNode c : children) {
-			c.addProvenanceExtension(provExt);
-		}
+	/*
+	 * Creates the Provenance of the resource of this node and propagates it to the descendants:
+	 * the nodes of the types registered in NodeFactory may have children, that inherit the
+	 * provenance extension. Each descendant is visited once, also when reachable from more
+	 * than one path (see addProvenanceExtension).
+	 */
+	Provenance addProvenance(DomainResource author, DomainResource provider, ProvenanceBatch batch) {
+		DomainResource r = (DomainResource)this.getResource();
+		Provenance provenance = ProvenanceBuilder.build(r, author, provider, batch);
+		if (!children.isEmpty())
+			addProvenanceExtension(ProvenanceBuilder.getProvenanceExtension(r, provenance));
+
+		return provenance;
+	}
+
+	/*
+	 * Adds the provenance extension to this node and to all its descendants. Every node is
+	 * visited once, and the extension is not added to resources that already reference the
+	 * same Provenance.
+	 */
+	void addProvenanceExtension(final Extension provExt) {
+		ResourceTreeWalker.walk(this, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode node, int depth) {
+				DomainResource r = (DomainResource)node.resource;
+				if (!ProvenanceBuilder.hasProvenanceExtension(r, provExt))
+					r.addExtension(provExt);
+				return true;
+			}
+		});
 	}
 
 	public void print4Debug() {
 		print4Debug(1);
 	}
 
-	void print4Debug(int level) {
+	void print4Debug(final int level) {
+		ResourceTreeWalker.walk(this, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode node, int depth) {
+				System.out.println(node.toDebugString(level + depth));
+				return true;
+			}
+		});
+	}
+
+	/*
+	 * Returns the line printed by print4Debug for this node
+	 */
+	String toDebugString(int level) {
 		StringBuilder spaces = new StringBuilder();
 		for (int i = 1; i < level; i++)
 			spaces.append("|---");
 
-		System.out.println(spaces.toString() + resource.getId());
-
-		level++;
-		for (ResourceNode n : children)
-			n.print4Debug(level);
+		return spaces.toString() + resource.getId();
 	}
 
 }
@@ -0,0 +1,20 @@
+package eu.interopehrate.protocols.provenance;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Callback invoked by ResourceTreeWalker for every node of a tree of ResourceNode.
+ */
+public interface ResourceNodeVisitor {
+
+	/**
+	 * Method invoked when the walker reaches a node.
+	 *
+	 * @param node: the visited node.
+	 * @param depth: distance of the node from the node where the walk started (that has depth 0).
+	 * @return true to continue the walk, false to stop it.
+	 */
+	boolean visit(ResourceNode node, int depth);
+
+}
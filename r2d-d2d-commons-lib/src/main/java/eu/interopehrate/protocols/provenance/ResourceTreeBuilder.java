@@ -0,0 +1,192 @@
+package eu.interopehrate.protocols.provenance;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Builds the tree of ResourceNode representing a FHIR resource and all the
+ *               resources it contains. During the build an index (resource id -> node) is kept,
+ *               so that resolving a referenced resource costs O(1) and the whole tree is built
+ *               in linear time. The build does not use recursion, so it supports arbitrarily
+ *               deep nesting of containers.
+ *
+ *  Usage:
+ *
+ *  ResourceTreeBuilder builder = new ResourceTreeBuilder();
+ *  ResourceNode root = builder.build(aFhirBundle);
+ *
+ *  ResourceNode obs = builder.getNode(anObservation.getId());
+ *
+ */
+public class ResourceTreeBuilder {
+
+	private final Map<String, ResourceNode> index = new HashMap<String, ResourceNode>();
+	// nodes whose children are being loaded, used to avoid cycles
+	private final Set<ResourceNode> loading = new HashSet<ResourceNode>();
+	// Bundles that lost some children, claimed by a container
+	private final Set<ResourceNode> detached = new HashSet<ResourceNode>();
+
+	public ResourceTreeBuilder() {}
+
+	/*
+	 * Creates a builder whose index already contains all the nodes of the provided tree.
+	 */
+	ResourceTreeBuilder(ResourceNode root) {
+		ResourceTreeWalker.walk(root, new ResourceNodeVisitor() {
+			@Override
+			public boolean visit(ResourceNode node, int depth) {
+				register(node);
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Method used to create the tree of nodes representing the provided resource.
+	 *
+	 * @param resource: the resource that will be the root of the tree.
+	 * @return the root node of the tree.
+	 */
+	public ResourceNode build(Resource resource) {
+		ResourceNode root = NodeFactory.createNode(resource);
+		register(root);
+		loadChildren(root);
+
+		return root;
+	}
+
+	/**
+	 * Method used to retrieve a node already added to the tree.
+	 *
+	 * @param resourceId: the id of the resource wrapped by the node.
+	 * @return the node wrapping the resource, or null if not present.
+	 */
+	public ResourceNode getNode(String resourceId) {
+		return index.get(resourceId);
+	}
+
+	/**
+	 *
+	 * @return the number of nodes indexed by the builder.
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/*
+	 * Creates (or retrieves from the index) the nodes of the descendants of the provided node.
+	 * A new node is linked to its parent only once all its descendants have been loaded, exactly
+	 * like a recursive visit would do, but an explicit stack of frames is used instead of
+	 * recursion so the depth of the tree is not bounded by the size of the thread stack.
+	 * A node referenced by more containers gets all of them as parents.
+	 */
+	void loadChildren(ResourceNode node) {
+		ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+		push(stack, node, null);
+
+		Frame frame;
+		Resource currentResource;
+		ResourceNode n;
+		while (!stack.isEmpty()) {
+			frame = stack.peek();
+			if (frame.next == frame.childResources.size()) {
+				stack.pop();
+				loading.remove(frame.node);
+				if (frame.parent != null)
+					frame.node.addParent(frame.parent);
+				continue;
+			}
+
+			currentResource = frame.childResources.get(frame.next++);
+			if (currentResource == null)
+				continue;
+
+			if (!NodeFactory.isAllowed(currentResource.getResourceType()))
+				continue;
+
+			if (currentResource.getId() == null)
+				continue;
+
+			n = index.get(currentResource.getId());
+			if (n == null) {
+				n = NodeFactory.createNode(currentResource);
+				register(n);
+				push(stack, n, frame.node);
+			} else if (frame.node.claimsExistingChildren() && !loading.contains(n)) {
+				claim(n, frame.node);
+			}
+		}
+
+		compactDetached();
+	}
+
+	/*
+	 * Adds the container as a parent of a node already in the tree. A node shared by more
+	 * containers keeps all of them as parents, but it is no longer a direct child of the
+	 * Bundles listing it as an entry.
+	 */
+	private void claim(ResourceNode node, ResourceNode container) {
+		List<ResourceNode> parents = node.getParents();
+		for (int i = parents.size() - 1; i >= 0; i--) {
+			if (!parents.get(i).claimsExistingChildren())
+				detached.add(parents.remove(i));
+		}
+
+		node.addParent(container);
+	}
+
+	/*
+	 * Removes from the children of the Bundles the nodes claimed by a container. Done once at
+	 * the end of the build, so the cost is linear in the number of entries.
+	 */
+	private void compactDetached() {
+		List<ResourceNode> children;
+		for (ResourceNode bundle : detached) {
+			children = new ArrayList<ResourceNode>(bundle.getChildren().size());
+			for (ResourceNode child : bundle.getChildren()) {
+				if (child.getParents().contains(bundle))
+					children.add(child);
+			}
+			bundle.children = children;
+		}
+		detached.clear();
+	}
+
+	private void push(ArrayDeque<Frame> stack, ResourceNode node, ResourceNode parent) {
+		Frame frame = new Frame(node, parent);
+		node.collectChildren(frame.childResources);
+		loading.add(node);
+		stack.push(frame);
+	}
+
+	private void register(ResourceNode node) {
+		if (node.getResource() != null && node.getResource().getId() != null)
+			index.put(node.getResource().getId(), node);
+	}
+
+	/*
+	 * A node whose children are being loaded
+	 */
+	private static final class Frame {
+		private final ResourceNode node;
+		private final ResourceNode parent;
+		private final List<Resource> childResources = new ArrayList<Resource>();
+		private int next;
+
+		private Frame(ResourceNode node, ResourceNode parent) {
+			this.node = node;
+			this.parent = parent;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Depth first, pre-order traversal of a tree of ResourceNode. The traversal uses an
+ *               explicit stack instead of recursion, so it supports arbitrarily deep trees
+ *               regardless of the size of the thread stack. A node shared by more than one
+ *               parent is visited only once, the first time it is reached.
+ *
+ *  Usage:
+ *
+ *  ResourceTreeWalker.walk(root, new ResourceNodeVisitor() {
+ *      public boolean visit(ResourceNode node, int depth) {
+ *          node.getResource().doSomething();
+ *          return true;
+ *      }
+ *  });
+ *
+ */
+public final class ResourceTreeWalker {
+
+	private ResourceTreeWalker() {}
+
+	/**
+	 * Method used to visit all the nodes of the tree starting from the provided node. Children
+	 * are visited in the same order they have in the list of children of their parent.
+	 *
+	 * @param start: the node where the walk starts.
+	 * @param visitor: the visitor invoked for every node.
+	 * @return the node for which the visitor returned false, or null if the walk visited all nodes.
+	 */
+	public static ResourceNode walk(ResourceNode start, ResourceNodeVisitor visitor) {
+		ArrayDeque<Step> stack = new ArrayDeque<Step>();
+		stack.push(new Step(start, 0));
+		Set<ResourceNode> visited = Collections.newSetFromMap(new IdentityHashMap<ResourceNode, Boolean>());
+
+		Step step;
+		List<ResourceNode> children;
+		while (!stack.isEmpty()) {
+			step = stack.pop();
+			if (!visited.add(step.node))
+				continue;
+
+			if (!visitor.visit(step.node, step.depth))
+				return step.node;
+
+			children = step.node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--)
+				stack.push(new Step(children.get(i), step.depth + 1));
+		}
+
+		return null;
+	}
+
+	private static final class Step {
+		private final ResourceNode node;
+		private final int depth;
+
+		private Step(ResourceNode node, int depth) {
+			this.node = node;
+			this.depth = depth;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package eu.interopehrate.protocols.provenance;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Lazily creates the ForkJoinPool, sized on the number of cores, shared by the
+ *               signers and verifiers that are not given their own pool.
+ */
+final class SharedForkJoinPool {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private SharedForkJoinPool() {}
+
+	static ForkJoinPool get() {
+		return POOL;
+	}
+
+}
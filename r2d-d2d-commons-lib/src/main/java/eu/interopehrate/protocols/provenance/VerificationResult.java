@@ -0,0 +1,79 @@
+package eu.interopehrate.protocols.provenance;
+
+/**
+ *  Author: Engineering S.p.A. (www.eng.it)
+ *  Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Outcome of the verification of the provenance of a single resource.
+ */
+public class VerificationResult {
+
+	public enum Status {
+		// the resource is the target of a Provenance whose signature is valid
+		VERIFIED,
+		// the resource is a descendant of the target of a Provenance signed in Merkle mode whose signature is valid
+		VERIFIED_BY_CONTAINER,
+		// the resource is a descendant of the target of a Provenance whose signature is valid,
+		// but its content is not covered by the signature
+		CONTAINED_NOT_SIGNED,
+		// the resource does not have a provenance extension
+		NOT_SIGNED,
+		// the Provenance cannot be resolved or its signature is not valid
+		FAILED
+	}
+
+	private final String resourceId;
+	private final Status status;
+	private final String message;
+	private final long elapsedNanos;
+
+	VerificationResult(String resourceId, Status status, String message, long elapsedNanos) {
+		this.resourceId = resourceId;
+		this.status = status;
+		this.message = message;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 *
+	 * @return the id of the verified resource, in the form "&lt;type&gt;/&lt;id&gt;".
+	 */
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 *
+	 * @return true if the status is VERIFIED or VERIFIED_BY_CONTAINER.
+	 */
+	public boolean isVerified() {
+		return status == Status.VERIFIED || status == Status.VERIFIED_BY_CONTAINER;
+	}
+
+	/**
+	 *
+	 * @return the reason of the failure, or null.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 *
+	 * @return the time spent verifying the Provenances of the resource, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return resourceId + ": " + status + (message != null ? " (" + message + ")" : "")
+				+ " in " + (elapsedNanos / 1000) + "us";
+	}
+
+}
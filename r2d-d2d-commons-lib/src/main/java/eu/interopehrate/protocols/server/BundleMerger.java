@@ -0,0 +1,132 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Merges many Bundles in a single Bundle, removing the duplicated resources.
+ *               Two resources are the same resource when they have the same type, logical id
+ *               and version (a resource without version is a different resource from any of its
+ *               versions). Resources without id are removed only when the same instance is
+ *               added more than once. The entries are kept in the order they are added for the
+ *               first time, and every entry costs O(1), so N Bundles are merged in a single
+ *               linear pass.
+ *
+ *  Usage:
+ *
+ *  BundleMerger merger = new BundleMerger();
+ *  merger.add(observations);
+ *  merger.add(reports);
+ *  Bundle merged = merger.getBundle();
+ *
+ */
+public class BundleMerger {
+
+    private final Bundle mergedBundle = new Bundle();
+    private final Set<String> insertedKeys = new HashSet<String>();
+    private final Set<Resource> insertedInstances =
+            Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+
+    public BundleMerger() {}
+
+    /**
+     * Method used to merge the provided Bundles.
+     *
+     * @param bundles: the Bundles to be merged, null values are ignored.
+     * @return a new Bundle containing the resources of all the provided Bundles.
+     */
+    public static Bundle merge(Bundle... bundles) {
+        BundleMerger merger = new BundleMerger();
+        for (Bundle bundle : bundles)
+            merger.add(bundle);
+
+        return merger.getBundle();
+    }
+
+    /**
+     * Method used to add to the merged Bundle the resources of a Bundle not already added.
+     *
+     * @param bundle: the Bundle whose resources must be added, null is ignored.
+     * @return the number of resources added.
+     */
+    public int add(Bundle bundle) {
+        if (bundle == null)
+            return 0;
+
+        int added = 0;
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (add(entry.getResource()))
+                added++;
+        }
+
+        return added;
+    }
+
+    /**
+     * Method used to add a resource to the merged Bundle, if not already added.
+     *
+     * @param resource: the resource to be added, null is ignored.
+     * @return true if the resource has been added, false if it was already present.
+     */
+    public boolean add(Resource resource) {
+        if (resource == null)
+            return false;
+
+        String key = keyOf(resource);
+        boolean isNew = key == null ? insertedInstances.add(resource) : insertedKeys.add(key);
+        if (isNew)
+            mergedBundle.addEntry().setResource(resource);
+
+        return isNew;
+    }
+
+    /**
+     *
+     * @return the Bundle containing the merged resources.
+     */
+    public Bundle getBundle() {
+        return mergedBundle;
+    }
+
+    /**
+     *
+     * @return the number of resources in the merged Bundle.
+     */
+    public int size() {
+        return mergedBundle.getEntry().size();
+    }
+
+    /*
+     * Returns the key identifying a resource ("type/id" or "type/id/_history/version"),
+     * or null if the resource does not have an id.
+     */
+    static String keyOf(Resource resource) {
+        if (!resource.hasIdElement())
+            return null;
+
+        IdType id = resource.getIdElement();
+        if (id.getIdPart() == null)
+            return null;
+
+        String version = id.getVersionIdPart();
+        if (version == null && resource.hasMeta())
+            version = resource.getMeta().getVersionId();
+
+        StringBuilder key = new StringBuilder(48);
+        key.append(resource.getResourceType().name()).append('/').append(id.getIdPart());
+        if (version != null)
+            key.append("/_history/").append(version);
+
+        return key.toString();
+    }
+
+}
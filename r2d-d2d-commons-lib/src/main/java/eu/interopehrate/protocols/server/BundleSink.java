@@ -0,0 +1,32 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: ResourceSink collecting the resources in a Bundle, used to answer a
+ *               Bundle-returning query with a StreamingResourceServerListener.
+ */
+public class BundleSink implements ResourceSink {
+
+    private final Bundle bundle = new Bundle();
+
+    public BundleSink() {}
+
+    @Override
+    public void add(Resource resource) {
+        bundle.addEntry().setResource(resource);
+    }
+
+    /**
+     *
+     * @return the Bundle containing the collected resources.
+     */
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+}
@@ -0,0 +1,343 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import eu.interopehrate.protocols.common.DocumentCategory;
+import eu.interopehrate.protocols.common.ResourceCategory;
+import eu.interopehrate.protocols.common.ResourceClassifier;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Decorator of a ResourceServerListener caching the Bundles returned by the
+ *               queries. The key of a cached Bundle is the whole list of arguments of the
+ *               query; at most maxEntries Bundles are kept (the least recently used ones are
+ *               evicted) and every Bundle expires after the configured time to live.
+ *
+ *               When new data is received the cached Bundles that could be affected are
+ *               removed: the ones of the categories of the received resources, the ones of
+ *               the document categories (documents contain resources of many categories) and
+ *               the ones of the queries not restricted to some categories.
+ *
+ *               The cached Bundles are shared by all the callers of the same query, so they
+ *               must not be modified.
+ *
+ *  Usage:
+ *
+ *  ResourceServerListener listener = new CachingResourceServerListener(storageListener, 256, 60000);
+ *  resourceServer.setResourceServerListener(listener);
+ *
+ */
+public class CachingResourceServerListener implements ResourceServerListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+    private static final String BY_IDS = "ids";
+    private static final String BY_DATE = "date";
+    private static final String BY_CATEGORIES = "categories";
+    private static final String BY_CATEGORY = "category";
+    private static final String MOST_RECENT = "mostRecent";
+
+    private final ResourceServerListener delegate;
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final Map<QueryKey, CacheEntry> cache;
+
+    // incremented when data is received, used to discard the results of queries started before
+    private long generation;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    /**
+     *
+     * @param delegate: the listener whose results must be cached.
+     */
+    public CachingResourceServerListener(ResourceServerListener delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     *
+     * @param delegate: the listener whose results must be cached.
+     * @param maxEntries: the maximum number of cached Bundles.
+     * @param timeToLiveMillis: the time after which a cached Bundle expires, 0 for no expiration.
+     */
+    public CachingResourceServerListener(ResourceServerListener delegate, int maxEntries, long timeToLiveMillis) {
+        if (delegate == null)
+            throw new IllegalArgumentException("Invalid argument: the delegate listener cannot be null.");
+        if (maxEntries < 1 || timeToLiveMillis < 0)
+            throw new IllegalArgumentException("Invalid arguments: maxEntries must be positive and timeToLiveMillis cannot be negative.");
+
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLiveMillis * 1000000L;
+        this.cache = new LinkedHashMap<QueryKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, CacheEntry> eldest) {
+                if (size() <= CachingResourceServerListener.this.maxEntries)
+                    return false;
+
+                evictionCount++;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Bundle onResourcesRequested(String... ids) throws Exception {
+        QueryKey key = new QueryKey(null, BY_IDS, ids == null ? new Object[0] : (Object[]) ids);
+        Bundle result = lookup(key);
+        if (result != null)
+            return result;
+
+        long startGeneration = currentGeneration();
+        return store(key, delegate.onResourcesRequested(ids), startGeneration);
+    }
+
+    @Override
+    public Bundle onResourcesRequested(Date from, boolean isSummary) throws Exception {
+        QueryKey key = new QueryKey(null, BY_DATE, time(from), isSummary);
+        Bundle result = lookup(key);
+        if (result != null)
+            return result;
+
+        long startGeneration = currentGeneration();
+        return store(key, delegate.onResourcesRequested(from, isSummary), startGeneration);
+    }
+
+    @Override
+    public Bundle onResourcesRequested(Date from, boolean isSummary, ResourceCategory... categories) throws Exception {
+        Set<ResourceCategory> keyCategories = new HashSet<ResourceCategory>(Arrays.asList(categories));
+        Object[] args = new Object[categories.length + 2];
+        args[0] = time(from);
+        args[1] = isSummary;
+        System.arraycopy(categories, 0, args, 2, categories.length);
+
+        QueryKey key = new QueryKey(keyCategories, BY_CATEGORIES, args);
+        Bundle result = lookup(key);
+        if (result != null)
+            return result;
+
+        long startGeneration = currentGeneration();
+        return store(key, delegate.onResourcesRequested(from, isSummary, categories), startGeneration);
+    }
+
+    @Override
+    public Bundle onResourcesRequested(ResourceCategory category, String subCategory, String type,
+                                      Date from, boolean isSummary) throws Exception {
+        QueryKey key = new QueryKey(Collections.singleton(category), BY_CATEGORY,
+                category, subCategory, type, time(from), isSummary);
+        Bundle result = lookup(key);
+        if (result != null)
+            return result;
+
+        long startGeneration = currentGeneration();
+        return store(key, delegate.onResourcesRequested(category, subCategory, type, from, isSummary), startGeneration);
+    }
+
+    @Override
+    public Bundle onResourcesRequested(ResourceCategory category, String subCategory, String type,
+                                      int mostRecentSize, boolean isSummary) throws Exception {
+        QueryKey key = new QueryKey(Collections.singleton(category), MOST_RECENT,
+                category, subCategory, type, mostRecentSize, isSummary);
+        Bundle result = lookup(key);
+        if (result != null)
+            return result;
+
+        long startGeneration = currentGeneration();
+        return store(key, delegate.onResourcesRequested(category, subCategory, type, mostRecentSize, isSummary), startGeneration);
+    }
+
+    @Override
+    public void onResourcesReceived(Bundle healthDataBundle) throws Exception {
+        try {
+            delegate.onResourcesReceived(healthDataBundle);
+        } finally {
+            // the data may have been partially stored even in case of failure
+            invalidate(healthDataBundle);
+        }
+    }
+
+    /**
+     * Method used to remove all the cached Bundles.
+     */
+    public synchronized void clear() {
+        generation++;
+        invalidationCount += cache.size();
+        cache.clear();
+    }
+
+    /**
+     *
+     * @return the number of queries whose result has been retrieved from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     *
+     * @return the number of queries forwarded to the delegate listener.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     *
+     * @return the number of cached Bundles evicted because the cache was full.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     *
+     * @return the number of cached Bundles removed because new data has been received.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     *
+     * @return the number of cached Bundles.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    private synchronized Bundle lookup(QueryKey key) {
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.isExpired(System.nanoTime())) {
+            cache.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.bundle;
+    }
+
+    private synchronized Bundle store(QueryKey key, Bundle bundle, long startGeneration) {
+        // a result computed while new data was being received could be stale
+        if (bundle != null && startGeneration == generation) {
+            long expiration = timeToLiveNanos == 0 ? 0 : System.nanoTime() + timeToLiveNanos;
+            cache.put(key, new CacheEntry(bundle, expiration));
+        }
+
+        return bundle;
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private void invalidate(Bundle healthDataBundle) {
+        Set<ResourceCategory> received = new HashSet<ResourceCategory>();
+        if (healthDataBundle != null) {
+            Resource resource;
+            for (Bundle.BundleEntryComponent entry : healthDataBundle.getEntry()) {
+                resource = entry.getResource();
+                if (resource != null)
+                    received.addAll(ResourceClassifier.getCategories(resource));
+            }
+        }
+
+        synchronized (this) {
+            generation++;
+            for (Iterator<QueryKey> it = cache.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().isAffectedBy(received)) {
+                    it.remove();
+                    invalidationCount++;
+                }
+            }
+        }
+    }
+
+    private static Long time(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    /*
+     * The arguments of a query, and the categories of the resources it returns (null if
+     * the query is not restricted to some categories).
+     */
+    private static final class QueryKey {
+        private final Object[] args;
+        private final int hash;
+        private final Set<ResourceCategory> categories;
+        private final boolean isDocumentQuery;
+
+        private QueryKey(Set<ResourceCategory> categories, String method, Object... args) {
+            this.args = new Object[args.length + 1];
+            this.args[0] = method;
+            System.arraycopy(args, 0, this.args, 1, args.length);
+            this.hash = Arrays.hashCode(this.args);
+            this.categories = categories;
+
+            boolean documents = false;
+            if (categories != null) {
+                for (ResourceCategory c : categories)
+                    documents |= c instanceof DocumentCategory;
+            }
+            this.isDocumentQuery = documents;
+        }
+
+        private boolean isAffectedBy(Set<ResourceCategory> received) {
+            if (categories == null || (isDocumentQuery && !received.isEmpty()))
+                return true;
+
+            for (ResourceCategory c : categories) {
+                if (received.contains(c))
+                    return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof QueryKey && hash == ((QueryKey) o).hash
+                    && Arrays.equals(args, ((QueryKey) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final Bundle bundle;
+        private final long expiration;
+
+        private CacheEntry(Bundle bundle, long expiration) {
+            this.bundle = bundle;
+            this.expiration = expiration;
+        }
+
+        private boolean isExpired(long now) {
+            return expiration != 0 && now - expiration >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package eu.interopehrate.protocols.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+import eu.interopehrate.protocols.client.ChunkTransport;
+import eu.interopehrate.protocols.codec.BundleCodec;
+import eu.interopehrate.protocols.codec.JsonBundleCodec;
+import eu.interopehrate.protocols.codec.ParserPool;
+import eu.interopehrate.protocols.common.BundleChunk;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Receiving side of a chunked upload (see ChunkedResourceWriter). The chunks of
+ *               every transfer are collected in order; a chunk with a wrong checksum, out of
+ *               order or already received is ignored, and the acknowledgement returned to the
+ *               sender is always the sequence number of the next expected chunk. When the last
+ *               chunk arrives the Bundle is rebuilt (with the codec used by the sender, JSON
+ *               by default) and forwarded to the ResourceServerListener;
+ *               if the listener fails the last chunk is discarded, so the sender sends it again
+ *               and the delivery is retried. The Bundle is decoded and delivered without holding
+ *               the lock of the reassembler, so meanwhile the chunks of the other transfers are
+ *               accepted; the last chunk of the transfer is acknowledged once delivered.
+ *
+ *               The ids of the last completed transfers are remembered, so a completed
+ *               transfer whose last acknowledgement was lost is not delivered twice. The
+ *               transfers not receiving chunks for longer than the time to live are discarded.
+ *
+ *               The number of chunks and the size of a transfer declared by the peer are not
+ *               trusted: a chunk of a transfer with more than maxChunks chunks, or exceeding
+ *               maxTransferSize bytes, is rejected.
+ *
+ *  Usage:
+ *
+ *  ChunkReassembler reassembler = new ChunkReassembler(resourceServerListener, FhirContext.forR4());
+ *  // for every chunk received from the channel
+ *  int ack = reassembler.sendChunk(chunk);
+ *
+ */
+public class ChunkReassembler implements ChunkTransport {
+
+    public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_CHUNKS = 64 * 1024;
+
+    private static final int COMPLETED_TRANSFERS = 64;
+
+    private final ResourceServerListener listener;
+    private final BundleCodec codec;
+    private final long timeToLiveNanos;
+    private final int maxTransferSize;
+    private final int maxChunks;
+    private final Map<String, Transfer> transfers = new LinkedHashMap<String, Transfer>();
+    // transfer id -> number of chunks, of the last completed transfers
+    private final Map<String, Integer> completed = new LinkedHashMap<String, Integer>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > COMPLETED_TRANSFERS;
+        }
+    };
+
+    private long receivedChunkCount;
+    private long rejectedChunkCount;
+    private long deliveredBundleCount;
+
+    /**
+     *
+     * @param listener: the listener receiving the rebuilt Bundles.
+     * @param context: the context used to parse the Bundles.
+     */
+    public ChunkReassembler(ResourceServerListener listener, FhirContext context) {
+        this(listener, context, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     *
+     * @param listener: the listener receiving the rebuilt Bundles.
+     * @param context: the context used to parse the Bundles.
+     * @param timeToLiveMillis: the time after which an incomplete transfer is discarded.
+     */
+    public ChunkReassembler(ResourceServerListener listener, FhirContext context, long timeToLiveMillis) {
+        this(listener, new JsonBundleCodec(new ParserPool(context)), timeToLiveMillis);
+    }
+
+    /**
+     *
+     * @param listener: the listener receiving the rebuilt Bundles.
+     * @param codec: the codec used to decode the Bundles.
+     * @param timeToLiveMillis: the time after which an incomplete transfer is discarded.
+     */
+    public ChunkReassembler(ResourceServerListener listener, BundleCodec codec, long timeToLiveMillis) {
+        this(listener, codec, timeToLiveMillis, DEFAULT_MAX_TRANSFER_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     *
+     * @param listener: the listener receiving the rebuilt Bundles.
+     * @param codec: the codec used to decode the Bundles.
+     * @param timeToLiveMillis: the time after which an incomplete transfer is discarded.
+     * @param maxTransferSize: the maximum number of bytes of a transfer.
+     * @param maxChunks: the maximum number of chunks of a transfer.
+     */
+    public ChunkReassembler(ResourceServerListener listener, BundleCodec codec, long timeToLiveMillis,
+                            int maxTransferSize, int maxChunks) {
+        if (listener == null || codec == null)
+            throw new IllegalArgumentException("Invalid arguments: the listener and the codec cannot be null.");
+        if (timeToLiveMillis < 1 || maxTransferSize < 1 || maxChunks < 1)
+            throw new IllegalArgumentException("Invalid arguments: timeToLiveMillis, maxTransferSize and maxChunks must be positive.");
+
+        this.listener = listener;
+        this.codec = codec;
+        this.timeToLiveNanos = timeToLiveMillis * 1000000L;
+        this.maxTransferSize = maxTransferSize;
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * Method invoked when a chunk is received.
+     *
+     * @param chunk: the received chunk.
+     * @return the sequence number of the next expected chunk.
+     * @throws Exception if the Bundle cannot be decoded or the listener fails.
+     */
+    @Override
+    public int sendChunk(BundleChunk chunk) throws Exception {
+        Transfer transfer;
+        synchronized (this) {
+            long now = System.nanoTime();
+            expire(now);
+
+            Integer done = completed.get(chunk.getTransferId());
+            if (done != null)
+                return done;
+
+            transfer = transfers.get(chunk.getTransferId());
+            if (transfer == null && chunk.getTotalChunks() > maxChunks) {
+                rejectedChunkCount++;
+                return 0;
+            }
+            if (transfer == null) {
+                transfer = new Transfer(chunk.getTotalChunks());
+                transfers.put(chunk.getTransferId(), transfer);
+            }
+            transfer.lastActivity = now;
+
+            if (transfer.delivering || !chunk.isValid() || chunk.getTotalChunks() != transfer.totalChunks
+                    || chunk.getSequence() != transfer.chunks.size()
+                    || chunk.getPayload().length > maxTransferSize - transfer.size) {
+                rejectedChunkCount++;
+                return transfer.getAcknowledged();
+            }
+
+            receivedChunkCount++;
+            transfer.chunks.add(chunk.getPayload());
+            transfer.size += chunk.getPayload().length;
+            if (!chunk.isLast())
+                return transfer.chunks.size();
+
+            // the chunks are not modified until the delivery ends
+            transfer.delivering = true;
+        }
+
+        boolean delivered = false;
+        try {
+            listener.onResourcesReceived(codec.decode(transfer.getData()));
+            delivered = true;
+        } finally {
+            synchronized (this) {
+                transfer.delivering = false;
+                if (delivered) {
+                    deliveredBundleCount++;
+                    transfers.remove(chunk.getTransferId());
+                    completed.put(chunk.getTransferId(), transfer.totalChunks);
+                } else {
+                    // the sender will send the last chunk again
+                    transfer.size -= transfer.chunks.remove(transfer.chunks.size() - 1).length;
+                    transfer.lastActivity = System.nanoTime();
+                }
+            }
+        }
+
+        return transfer.totalChunks;
+    }
+
+    @Override
+    public synchronized int getProgress(String transferId) {
+        Integer done = completed.get(transferId);
+        if (done != null)
+            return done;
+
+        Transfer transfer = transfers.get(transferId);
+        return transfer == null ? 0 : transfer.getAcknowledged();
+    }
+
+    /**
+     *
+     * @return the number of chunks accepted.
+     */
+    public synchronized long getReceivedChunkCount() {
+        return receivedChunkCount;
+    }
+
+    /**
+     *
+     * @return the number of chunks ignored because corrupted, out of order, already received
+     *         or exceeding the limits of a transfer.
+     */
+    public synchronized long getRejectedChunkCount() {
+        return rejectedChunkCount;
+    }
+
+    /**
+     *
+     * @return the number of Bundles forwarded to the listener.
+     */
+    public synchronized long getDeliveredBundleCount() {
+        return deliveredBundleCount;
+    }
+
+    /**
+     *
+     * @return the number of transfers not completed yet.
+     */
+    public synchronized int getPendingTransferCount() {
+        return transfers.size();
+    }
+
+    private void expire(long now) {
+        Transfer transfer;
+        for (Iterator<Transfer> it = transfers.values().iterator(); it.hasNext(); ) {
+            transfer = it.next();
+            if (!transfer.delivering && now - transfer.lastActivity > timeToLiveNanos)
+                it.remove();
+        }
+    }
+
+    private static final class Transfer {
+        private final int totalChunks;
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+        // the number of bytes of the chunks
+        private int size;
+        private long lastActivity;
+        // true while the Bundle is decoded and forwarded to the listener
+        private boolean delivering;
+
+        private Transfer(int totalChunks) {
+            this.totalChunks = totalChunks;
+        }
+
+        /*
+         * The last chunk is acknowledged only once the Bundle has been delivered
+         */
+        private int getAcknowledged() {
+            return delivering ? chunks.size() - 1 : chunks.size();
+        }
+
+        private byte[] getData() {
+            byte[] data = new byte[size];
+            int offset = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, data, offset, chunk.length);
+                offset += chunk.length;
+            }
+
+            return data;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: ResourceSink serializing the resources as a JSON searchset Bundle while they
+ *               are produced. The serialized entries are kept in a buffer that is written and
+ *               flushed to the destination every time it exceeds the chunk size, so the memory
+ *               used is bounded by the chunk size plus the largest resource, whatever the
+ *               number of resources. The Bundle is completed by finish (or close).
+ *               Instances are not thread safe.
+ *
+ *  Usage:
+ *
+ *  ChunkedBundleWriter writer = new ChunkedBundleWriter(fhirContext, socketOutputStream, 64 * 1024);
+ *  streamingListener.onResourcesRequested(writer, from, false, categories);
+ *  writer.finish();
+ *
+ */
+public class ChunkedBundleWriter implements ResourceSink, Closeable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final String HEADER = "{\"resourceType\":\"Bundle\",\"type\":\"searchset\"";
+    private static final String ENTRY_START = ",\"entry\":[";
+
+    private final Writer destination;
+    private final IParser parser;
+    private final int chunkSize;
+    private final StringWriter chunk;
+    private int resourceCount;
+    private int chunkCount;
+    private boolean finished;
+
+    /**
+     *
+     * @param context: the FHIR context used to serialize the resources.
+     * @param destination: the stream where the Bundle is written, as UTF-8.
+     * @param chunkSize: the number of characters written to the destination at once.
+     */
+    public ChunkedBundleWriter(FhirContext context, OutputStream destination, int chunkSize) {
+        this(context, new OutputStreamWriter(destination, Charset.forName("UTF-8")), chunkSize);
+    }
+
+    /**
+     *
+     * @param context: the FHIR context used to serialize the resources.
+     * @param destination: the writer where the Bundle is written.
+     * @param chunkSize: the number of characters written to the destination at once.
+     */
+    public ChunkedBundleWriter(FhirContext context, Writer destination, int chunkSize) {
+        if (context == null || destination == null)
+            throw new IllegalArgumentException("Invalid arguments: the context and the destination cannot be null.");
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Invalid argument: the chunk size must be positive.");
+
+        this.destination = destination;
+        this.parser = context.newJsonParser();
+        this.chunkSize = chunkSize;
+        this.chunk = new StringWriter(chunkSize + chunkSize / 4);
+        this.chunk.write(HEADER);
+    }
+
+    @Override
+    public void add(Resource resource) throws IOException {
+        if (finished)
+            throw new IllegalStateException("The Bundle has already been completed.");
+        if (resource == null)
+            return;
+
+        chunk.write(resourceCount == 0 ? ENTRY_START : ",");
+        chunk.write("{\"resource\":");
+        parser.encodeResourceToWriter(resource, chunk);
+        chunk.write('}');
+        resourceCount++;
+
+        if (chunk.getBuffer().length() >= chunkSize)
+            flushChunk();
+    }
+
+    /**
+     * Method used to complete the Bundle and to flush it to the destination, that is not
+     * closed.
+     *
+     * @throws IOException in case of failure
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        if (resourceCount > 0)
+            chunk.write(']');
+        chunk.write('}');
+        finished = true;
+        flushChunk();
+    }
+
+    /**
+     * Method used to complete the Bundle and to close the destination.
+     *
+     * @throws IOException in case of failure
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            destination.close();
+        }
+    }
+
+    /**
+     *
+     * @return the number of resources written.
+     */
+    public int getResourceCount() {
+        return resourceCount;
+    }
+
+    /**
+     *
+     * @return the number of chunks written to the destination.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    private void flushChunk() throws IOException {
+        StringBuffer buffer = chunk.getBuffer();
+        if (buffer.length() == 0)
+            return;
+
+        destination.write(buffer.toString());
+        destination.flush();
+        buffer.setLength(0);
+        chunkCount++;
+    }
+
+}
@@ -0,0 +1,29 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Listener able to return only the resources created or changed since a
+ *               previous request. The returned Bundle contains the sync token to be used in
+ *               the following request (see SyncTokens).
+ */
+public interface DeltaSyncListener {
+
+    /**
+     * Method invoked to retrieve the resources created or changed since the state identified
+     * by a sync token.
+     *
+     * @param syncToken: the token returned by the previous request, null to retrieve all the resources.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @return a Bundle with the changed resources and the new sync token. When the token is
+     *         null or not valid anymore the Bundle contains all the resources and it is
+     *         marked as full sync.
+     * @throws Exception in case of failure
+     */
+    Bundle onChangesRequested(String syncToken, boolean isSummary) throws Exception;
+
+}
@@ -0,0 +1,86 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.Set;
+
+import eu.interopehrate.protocols.client.ResourceWriter;
+import eu.interopehrate.protocols.common.DigestProvider;
+import eu.interopehrate.protocols.common.FHIRResourceCategory;
+import eu.interopehrate.protocols.common.ResourceDigest;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Local stand-in of a peer device, to be used in tests of the reconciliation
+ *               in place of a D2D connection. The data sent to the peer is stored in an
+ *               InMemoryResourceStore, which provides the digest of the held resources.
+ *
+ *  Usage:
+ *
+ *  InMemoryPeer peer = new InMemoryPeer();
+ *  ResourceWriter writer = new ReconcilingResourceWriter(peer, peer);
+ *  writer.sendHealthData(aFhirBundle);
+ *
+ */
+public class InMemoryPeer implements ResourceWriter, DigestProvider {
+
+    private final InMemoryResourceStore store;
+    private long receivedBundleCount;
+    private long receivedResourceCount;
+
+    public InMemoryPeer() {
+        this(new InMemoryResourceStore());
+    }
+
+    /**
+     *
+     * @param store: the store holding the data of the peer.
+     */
+    public InMemoryPeer(InMemoryResourceStore store) {
+        if (store == null)
+            throw new IllegalArgumentException("Invalid argument: the store cannot be null.");
+
+        this.store = store;
+    }
+
+    @Override
+    public void sendHealthData(Bundle healthData) throws Exception {
+        store.onResourcesReceived(healthData);
+        synchronized (this) {
+            receivedBundleCount++;
+            receivedResourceCount += healthData == null ? 0 : healthData.getEntry().size();
+        }
+    }
+
+    @Override
+    public ResourceDigest getDigest(Set<FHIRResourceCategory> categories) {
+        return store.getDigest(categories);
+    }
+
+    /**
+     *
+     * @return the store holding the data of the peer.
+     */
+    public InMemoryResourceStore getStore() {
+        return store;
+    }
+
+    /**
+     *
+     * @return the number of Bundles received by the peer.
+     */
+    public synchronized long getReceivedBundleCount() {
+        return receivedBundleCount;
+    }
+
+    /**
+     *
+     * @return the number of resources received by the peer.
+     */
+    public synchronized long getReceivedResourceCount() {
+        return receivedResourceCount;
+    }
+
+}
@@ -0,0 +1,598 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import eu.interopehrate.protocols.common.CodeToken;
+import eu.interopehrate.protocols.common.DigestProvider;
+import eu.interopehrate.protocols.common.FHIRResourceCategory;
+import eu.interopehrate.protocols.common.QueryFilter;
+import eu.interopehrate.protocols.common.ResourceCategory;
+import eu.interopehrate.protocols.common.ResourceClassifier;
+import eu.interopehrate.protocols.common.ResourceDigest;
+import eu.interopehrate.protocols.common.SyncTokens;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Reference implementation of ResourceServerListener keeping the resources in
+ *               memory. The resources are indexed by id, by category (FHIRResourceCategory and
+ *               DocumentCategory, each one sorted by date), by sub category and by type (see
+ *               ResourceClassifier), so all the queries are answered with index lookups.
+ *               It can be used as the backend of a ResourceServer in tests or as a local
+ *               stand-in server for load testing.
+ *
+ *               The resources received with onResourcesReceived are stored by their logical id:
+ *               a resource replaces the stored one with the same type and id, a resource
+ *               without id gets a new one as a FHIR server would do. The stored instances are
+ *               returned by the queries, so they must not be modified. The queries always
+ *               return the whole resources, isSummary is ignored.
+ *
+ *               The store can also be used as a StreamingResourceServerListener: the matching
+ *               resources are selected from the indexes and then pushed to the sink.
+ *
+ *               Every stored resource gets a change sequence number, so the store can be used
+ *               as a DeltaSyncListener: the sync token is the next sequence number, qualified by
+ *               an identifier of the content of the store that changes when it is cleared. A
+ *               received resource with the same meta.versionId and meta.lastUpdated of the
+ *               stored one is not a change.
+ *
+ *               As a DigestProvider the store describes the stored resources with a
+ *               ResourceDigest, so it can be used as a stand-in peer of a reconciliation.
+ *
+ *               Reads are executed concurrently, writes are exclusive. The matching resources
+ *               are copied while holding the lock and pushed to the sink after releasing it,
+ *               so a slow sink does not delay the writes.
+ *
+ *  Usage:
+ *
+ *  InMemoryResourceStore store = new InMemoryResourceStore();
+ *  store.onResourcesReceived(aFhirBundle);
+ *  resourceServer.setResourceServerListener(store);
+ *
+ */
+public class InMemoryResourceStore implements ResourceServerListener, StreamingResourceServerListener,
+        DeltaSyncListener, DigestProvider {
+
+    // marker of a filter not specified
+    private static final Set<StoredResource> ALL = Collections.unmodifiableSet(new HashSet<StoredResource>());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // "type/id" -> resource
+    private final Map<String, StoredResource> byKey = new HashMap<String, StoredResource>();
+    // "id" -> resources of any type
+    private final Map<String, Set<StoredResource>> byIdPart = new HashMap<String, Set<StoredResource>>();
+    private final NavigableSet<StoredResource> byDate = new TreeSet<StoredResource>();
+    private final Map<ResourceCategory, NavigableSet<StoredResource>> byCategory =
+            new HashMap<ResourceCategory, NavigableSet<StoredResource>>();
+    private final Map<CodeToken, Set<StoredResource>> bySubCategory = new HashMap<CodeToken, Set<StoredResource>>();
+    private final Map<CodeToken, Set<StoredResource>> byType = new HashMap<CodeToken, Set<StoredResource>>();
+    // change sequence number -> resource
+    private final NavigableMap<Long, StoredResource> byChange = new TreeMap<Long, StoredResource>();
+    private long sequence;
+    // identifies the content of the store in the sync tokens, changed when the store is cleared
+    private String epoch = UUID.randomUUID().toString();
+
+    public InMemoryResourceStore() {}
+
+    @Override
+    public Bundle onResourcesRequested(String... ids) throws Exception {
+        BundleSink sink = new BundleSink();
+        onResourcesRequested(sink, ids);
+        return sink.getBundle();
+    }
+
+    @Override
+    public Bundle onResourcesRequested(Date from, boolean isSummary) throws Exception {
+        BundleSink sink = new BundleSink();
+        onResourcesRequested(sink, from, isSummary);
+        return sink.getBundle();
+    }
+
+    @Override
+    public Bundle onResourcesRequested(Date from, boolean isSummary, ResourceCategory... categories) throws Exception {
+        BundleSink sink = new BundleSink();
+        onResourcesRequested(sink, from, isSummary, categories);
+        return sink.getBundle();
+    }
+
+    @Override
+    public Bundle onResourcesRequested(ResourceCategory category, String subCategory, String type,
+                                      Date from, boolean isSummary) throws Exception {
+        BundleSink sink = new BundleSink();
+        onResourcesRequested(sink, category, subCategory, type, from, isSummary);
+        return sink.getBundle();
+    }
+
+    @Override
+    public Bundle onResourcesRequested(ResourceCategory category, String subCategory, String type,
+                                      int mostRecentSize, boolean isSummary) throws Exception {
+        BundleSink sink = new BundleSink();
+        onResourcesRequested(sink, category, subCategory, type, mostRecentSize, isSummary);
+        return sink.getBundle();
+    }
+
+    /**
+     * Method used to retrieve resources by id. The ids can have the form "type/id" or
+     * "type/id/_history/version" (the stored version is returned), or can be the logical
+     * id alone, matching the resources of any type.
+     */
+    @Override
+    public void onResourcesRequested(ResourceSink sink, String... ids) throws Exception {
+        Set<StoredResource> selected = new HashSet<StoredResource>();
+        List<Resource> resources = new ArrayList<Resource>();
+        lock.readLock().lock();
+        try {
+            for (String id : ids) {
+                if (id == null)
+                    continue;
+
+                IdType idType = new IdType(id);
+                if (idType.hasResourceType()) {
+                    StoredResource stored = byKey.get(keyOf(idType.getResourceType(), idType.getIdPart()));
+                    if (stored != null && selected.add(stored))
+                        resources.add(stored.resource);
+                } else {
+                    for (StoredResource stored : lookup(byIdPart, idType.getIdPart())) {
+                        if (selected.add(stored))
+                            resources.add(stored.resource);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        push(resources, sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, Date from, boolean isSummary) throws Exception {
+        List<Resource> resources;
+        lock.readLock().lock();
+        try {
+            resources = copy(from == null ? byDate : byDate.tailSet(probe(from), true));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        push(resources, sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, Date from, boolean isSummary,
+                                     ResourceCategory... categories) throws Exception {
+        // a resource can belong to more categories (for instance a laboratory DiagnosticReport)
+        Set<StoredResource> selected = new HashSet<StoredResource>();
+        List<Resource> resources = new ArrayList<Resource>();
+        lock.readLock().lock();
+        try {
+            for (ResourceCategory category : categories) {
+                for (StoredResource stored : select(category, QueryFilter.ALL, from)) {
+                    if (selected.add(stored))
+                        resources.add(stored.resource);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        push(resources, sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, ResourceCategory category, String subCategory,
+                                     String type, Date from, boolean isSummary) throws Exception {
+        QueryFilter filter = QueryFilter.compile(subCategory, type);
+        List<Resource> resources;
+        lock.readLock().lock();
+        try {
+            resources = copy(select(category, filter, from));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        push(resources, sink);
+    }
+
+    /**
+     * Method used to retrieve the most recent resources of a category, sorted from the most
+     * recent one.
+     */
+    @Override
+    public void onResourcesRequested(ResourceSink sink, ResourceCategory category, String subCategory,
+                                     String type, int mostRecentSize, boolean isSummary) throws Exception {
+        if (mostRecentSize < 0)
+            throw new IllegalArgumentException("Invalid argument: mostRecentSize cannot be negative.");
+
+        QueryFilter filter = QueryFilter.compile(subCategory, type);
+        List<Resource> resources;
+        lock.readLock().lock();
+        try {
+            resources = selectMostRecent(category, filter, mostRecentSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        push(resources, sink);
+    }
+
+    @Override
+    public Bundle onChangesRequested(String syncToken, boolean isSummary) throws Exception {
+        Bundle bundle;
+        lock.readLock().lock();
+        try {
+            long since = sinceOf(syncToken);
+            BundleSink sink = new BundleSink();
+            for (StoredResource stored : byChange.tailMap(Math.max(since, 0), true).values())
+                sink.add(stored.resource);
+
+            bundle = sink.getBundle();
+            SyncTokens.setSyncToken(bundle, epoch + ":" + sequence, since < 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return bundle;
+    }
+
+    @Override
+    public ResourceDigest getDigest(Set<FHIRResourceCategory> categories) {
+        List<Resource> resources = new ArrayList<Resource>();
+        lock.readLock().lock();
+        try {
+            if (categories == null) {
+                for (StoredResource stored : byKey.values())
+                    resources.add(stored.resource);
+            } else {
+                NavigableSet<StoredResource> inCategory;
+                for (FHIRResourceCategory category : categories) {
+                    inCategory = byCategory.get(category);
+                    if (inCategory != null) {
+                        for (StoredResource stored : inCategory)
+                            resources.add(stored.resource);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return ResourceDigest.of(resources, ResourceDigest.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * Method used to store the resources contained in a Bundle.
+     */
+    @Override
+    public void onResourcesReceived(Bundle healthDataBundle) throws Exception {
+        if (healthDataBundle == null)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            for (Bundle.BundleEntryComponent entry : healthDataBundle.getEntry()) {
+                if (entry.getResource() != null)
+                    store(entry.getResource());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of stored resources.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method used to remove all the stored resources.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            byKey.clear();
+            byIdPart.clear();
+            byDate.clear();
+            byCategory.clear();
+            bySubCategory.clear();
+            byType.clear();
+            byChange.clear();
+            // the tokens issued before are not valid anymore
+            epoch = UUID.randomUUID().toString();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Returns the resources of a category matching the filters, sorted by date
+     */
+    private Collection<StoredResource> select(ResourceCategory category, QueryFilter filter, Date from) {
+        NavigableSet<StoredResource> inCategory = byCategory.get(category);
+        Set<StoredResource> candidates = smallestIndex(filter);
+        if (inCategory == null || candidates == null)
+            return Collections.emptyList();
+
+        if (candidates != ALL && candidates.size() < inCategory.size()) {
+            List<StoredResource> selected = filter(candidates, category, filter, from);
+            Collections.sort(selected);
+            return selected;
+        }
+
+        NavigableSet<StoredResource> range = from == null ? inCategory : inCategory.tailSet(probe(from), true);
+        if (filter.isEmpty())
+            return range;
+
+        return filter(range, category, filter, null);
+    }
+
+    /*
+     * Returns the most recent resources of a category matching the filters, sorted from the
+     * most recent one
+     */
+    private List<Resource> selectMostRecent(ResourceCategory category, QueryFilter filter, int mostRecentSize) {
+        NavigableSet<StoredResource> inCategory = byCategory.get(category);
+        Set<StoredResource> candidates = smallestIndex(filter);
+        if (inCategory == null || candidates == null || mostRecentSize == 0)
+            return Collections.emptyList();
+
+        if (candidates != ALL && candidates.size() < inCategory.size()) {
+            // few resources match the filter, a bounded heap costs less than walking the category
+            MostRecentSelector selector = new MostRecentSelector(mostRecentSize);
+            for (StoredResource stored : candidates) {
+                if (stored.categories.contains(category) && stored.matches(filter))
+                    selector.offer(stored.resource, stored.time);
+            }
+            return selector.getResult();
+        }
+
+        // the category is sorted by date, so the walk stops after mostRecentSize matches
+        List<Resource> selected = new ArrayList<Resource>(Math.min(mostRecentSize, inCategory.size()));
+        StoredResource stored;
+        for (Iterator<StoredResource> it = inCategory.descendingIterator(); it.hasNext() && selected.size() < mostRecentSize; ) {
+            stored = it.next();
+            if (stored.matches(filter))
+                selected.add(stored.resource);
+        }
+
+        return selected;
+    }
+
+    /*
+     * Returns the smallest index among the ones of the sub category and of the type, ALL if
+     * the filter is empty, or null if no resources match the filter.
+     */
+    private Set<StoredResource> smallestIndex(QueryFilter filter) {
+        Set<StoredResource> bySub = filter.getSubCategory() == null ? ALL : bySubCategory.get(filter.getSubCategory());
+        Set<StoredResource> byTyp = filter.getType() == null ? ALL : byType.get(filter.getType());
+        if (bySub == null || byTyp == null)
+            return null;
+
+        if (bySub == ALL)
+            return byTyp;
+        if (byTyp == ALL)
+            return bySub;
+
+        return bySub.size() <= byTyp.size() ? bySub : byTyp;
+    }
+
+    private static List<StoredResource> filter(Collection<StoredResource> candidates, ResourceCategory category,
+                                               QueryFilter filter, Date from) {
+        List<StoredResource> selected = new ArrayList<StoredResource>();
+        long fromTime = from == null ? Long.MIN_VALUE : from.getTime();
+        for (StoredResource stored : candidates) {
+            if (stored.categories.contains(category) && stored.matches(filter)
+                    && (from == null || (stored.hasDate && stored.time >= fromTime)))
+                selected.add(stored);
+        }
+
+        return selected;
+    }
+
+    private void store(Resource resource) {
+        if (!resource.hasIdElement() || resource.getIdElement().getIdPart() == null)
+            resource.setId(new IdType(resource.getResourceType().name(), UUID.randomUUID().toString()));
+
+        String idPart = resource.getIdElement().getIdPart();
+        String key = keyOf(resource.getResourceType().name(), idPart);
+        StoredResource previous = byKey.get(key);
+        if (previous != null)
+            remove(previous);
+
+        // the same version of a stored resource keeps its change sequence number
+        long change = previous != null && isSameVersion(previous.resource, resource) ? previous.sequence : sequence++;
+        Date date = ResourceClassifier.getDate(resource);
+        StoredResource stored = new StoredResource(resource, key, idPart, date, change);
+        byKey.put(key, stored);
+        byChange.put(change, stored);
+        index(byIdPart, idPart, stored);
+        byDate.add(stored);
+        for (ResourceCategory category : stored.categories) {
+            NavigableSet<StoredResource> set = byCategory.get(category);
+            if (set == null) {
+                set = new TreeSet<StoredResource>();
+                byCategory.put(category, set);
+            }
+            set.add(stored);
+        }
+        for (CodeToken token : stored.subCategories)
+            index(bySubCategory, token, stored);
+        for (CodeToken token : stored.types)
+            index(byType, token, stored);
+    }
+
+    private void remove(StoredResource stored) {
+        byKey.remove(stored.key);
+        byChange.remove(stored.sequence);
+        unindex(byIdPart, stored.idPart, stored);
+        byDate.remove(stored);
+        for (ResourceCategory category : stored.categories) {
+            NavigableSet<StoredResource> set = byCategory.get(category);
+            set.remove(stored);
+            if (set.isEmpty())
+                byCategory.remove(category);
+        }
+        for (CodeToken token : stored.subCategories)
+            unindex(bySubCategory, token, stored);
+        for (CodeToken token : stored.types)
+            unindex(byType, token, stored);
+    }
+
+    /*
+     * Returns the first change sequence number not known by the client, or -1 if the token is
+     * missing or not valid for the current content of the store.
+     */
+    private long sinceOf(String syncToken) {
+        int separator = syncToken == null ? -1 : syncToken.lastIndexOf(':');
+        if (separator < 0 || !epoch.equals(syncToken.substring(0, separator)))
+            return -1;
+
+        try {
+            long since = Long.parseLong(syncToken.substring(separator + 1));
+            return since >= 0 && since <= sequence ? since : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isSameVersion(Resource stored, Resource received) {
+        if (!stored.hasMeta() || !received.hasMeta() || !stored.getMeta().hasVersionId())
+            return false;
+
+        Date storedUpdate = stored.getMeta().getLastUpdated();
+        Date receivedUpdate = received.getMeta().getLastUpdated();
+        return stored.getMeta().getVersionId().equals(received.getMeta().getVersionId())
+                && (storedUpdate == null ? receivedUpdate == null : storedUpdate.equals(receivedUpdate));
+    }
+
+    private static <K> void index(Map<K, Set<StoredResource>> map, K token, StoredResource stored) {
+        Set<StoredResource> set = map.get(token);
+        if (set == null) {
+            set = new HashSet<StoredResource>();
+            map.put(token, set);
+        }
+        set.add(stored);
+    }
+
+    private static <K> void unindex(Map<K, Set<StoredResource>> map, K token, StoredResource stored) {
+        Set<StoredResource> set = map.get(token);
+        if (set != null) {
+            set.remove(stored);
+            if (set.isEmpty())
+                map.remove(token);
+        }
+    }
+
+    private static Set<StoredResource> lookup(Map<String, Set<StoredResource>> map, String token) {
+        Set<StoredResource> set = map.get(token);
+        return set == null ? Collections.<StoredResource>emptySet() : set;
+    }
+
+    private static String keyOf(String type, String idPart) {
+        return type + "/" + idPart;
+    }
+
+    private static List<Resource> copy(Collection<StoredResource> selected) {
+        List<Resource> resources = new ArrayList<Resource>(selected.size());
+        for (StoredResource stored : selected)
+            resources.add(stored.resource);
+
+        return resources;
+    }
+
+    private static void push(List<Resource> resources, ResourceSink sink) throws Exception {
+        for (Resource resource : resources)
+            sink.add(resource);
+    }
+
+    /*
+     * Returns an element preceding all the resources with a date equal or after the provided one
+     */
+    private static StoredResource probe(Date from) {
+        return new StoredResource(from.getTime(), Long.MIN_VALUE);
+    }
+
+    /*
+     * A stored resource with the properties used by the indexes. Resources are sorted by date
+     * (the ones without date first) and then by order of arrival.
+     */
+    private static final class StoredResource implements Comparable<StoredResource> {
+        private final Resource resource;
+        private final String key;
+        private final String idPart;
+        private final boolean hasDate;
+        private final long time;
+        private final long sequence;
+        private final Set<ResourceCategory> categories;
+        private final Set<CodeToken> subCategories;
+        private final Set<CodeToken> types;
+
+        private StoredResource(Resource resource, String key, String idPart, Date date, long sequence) {
+            this.resource = resource;
+            this.key = key;
+            this.idPart = idPart;
+            this.hasDate = date != null;
+            this.time = date == null ? Long.MIN_VALUE : date.getTime();
+            this.sequence = sequence;
+            this.categories = ResourceClassifier.getCategories(resource);
+            this.subCategories = ResourceClassifier.getSubCategories(resource);
+            this.types = ResourceClassifier.getTypes(resource);
+        }
+
+        private StoredResource(long time, long sequence) {
+            this.resource = null;
+            this.key = null;
+            this.idPart = null;
+            this.hasDate = true;
+            this.time = time;
+            this.sequence = sequence;
+            this.categories = Collections.emptySet();
+            this.subCategories = Collections.emptySet();
+            this.types = Collections.emptySet();
+        }
+
+        private boolean matches(QueryFilter filter) {
+            return (filter.getSubCategory() == null || subCategories.contains(filter.getSubCategory()))
+                    && (filter.getType() == null || types.contains(filter.getType()));
+        }
+
+        @Override
+        public int compareTo(StoredResource o) {
+            if (time != o.time)
+                return time < o.time ? -1 : 1;
+            if (sequence != o.sequence)
+                return sequence < o.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+
+}
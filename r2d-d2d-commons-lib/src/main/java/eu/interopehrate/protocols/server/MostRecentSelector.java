@@ -0,0 +1,175 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import eu.interopehrate.protocols.common.ResourceClassifier;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Selects the K most recent resources among the ones offered, without sorting
+ *               all of them: the selected resources are kept in a min-heap of size K, so
+ *               selecting among N resources costs O(N log K) time and O(K) memory.
+ *               The date of a resource is the one returned by ResourceClassifier.getDate,
+ *               unless provided explicitly; resources without date are older than any dated
+ *               one, and among resources with the same date the first offered is preferred.
+ *
+ *  Usage:
+ *
+ *  MostRecentSelector selector = new MostRecentSelector(mostRecentSize);
+ *  for (Resource r : candidates)
+ *      selector.offer(r);
+ *  Bundle result = selector.toBundle();
+ *
+ */
+public class MostRecentSelector {
+
+    private final int size;
+    // the root is the least recent selected resource, the first one to be discarded
+    private final PriorityQueue<Candidate> heap;
+    private long sequence;
+
+    /**
+     *
+     * @param size: the number of resources to be selected.
+     */
+    public MostRecentSelector(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Invalid argument: the size cannot be negative.");
+
+        this.size = size;
+        this.heap = new PriorityQueue<Candidate>(Math.max(1, size + 1));
+    }
+
+    /**
+     * Method used to select the most recent resources of a Bundle.
+     *
+     * @param bundle: the Bundle containing the candidates, may be null.
+     * @param size: the number of resources to be selected.
+     * @return a new Bundle containing the selected resources, from the most recent one.
+     */
+    public static Bundle select(Bundle bundle, int size) {
+        MostRecentSelector selector = new MostRecentSelector(size);
+        if (bundle != null) {
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry())
+                selector.offer(entry.getResource());
+        }
+
+        return selector.toBundle();
+    }
+
+    /**
+     * Method used to offer a candidate, whose date is retrieved with ResourceClassifier.
+     *
+     * @param resource: the candidate, null is ignored.
+     * @return true if the resource is currently among the selected ones.
+     */
+    public boolean offer(Resource resource) {
+        if (resource == null)
+            return false;
+
+        return offer(resource, ResourceClassifier.getDate(resource));
+    }
+
+    /**
+     * Method used to offer a candidate with a known date.
+     *
+     * @param resource: the candidate, null is ignored.
+     * @param date: the date of the candidate, may be null.
+     * @return true if the resource is currently among the selected ones.
+     */
+    public boolean offer(Resource resource, Date date) {
+        return offer(resource, date == null ? Long.MIN_VALUE : date.getTime());
+    }
+
+    /*
+     * Offers a candidate whose date is expressed in milliseconds, Long.MIN_VALUE if unknown
+     */
+    boolean offer(Resource resource, long time) {
+        if (resource == null || size == 0)
+            return false;
+
+        Candidate candidate = new Candidate(resource, time, sequence++);
+        if (heap.size() < size) {
+            heap.add(candidate);
+            return true;
+        }
+
+        // not more recent than the least recent selected resource
+        if (candidate.compareTo(heap.peek()) <= 0)
+            return false;
+
+        heap.poll();
+        heap.add(candidate);
+        return true;
+    }
+
+    /**
+     *
+     * @return the selected resources, from the most recent one.
+     */
+    public List<Resource> getResult() {
+        List<Candidate> candidates = new ArrayList<Candidate>(heap);
+        Collections.sort(candidates, Collections.reverseOrder());
+
+        List<Resource> result = new ArrayList<Resource>(candidates.size());
+        for (Candidate c : candidates)
+            result.add(c.resource);
+
+        return result;
+    }
+
+    /**
+     *
+     * @return a new Bundle containing the selected resources, from the most recent one.
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        for (Resource resource : getResult())
+            bundle.addEntry().setResource(resource);
+
+        return bundle;
+    }
+
+    /**
+     *
+     * @return the number of resources currently selected.
+     */
+    public int getSelectedCount() {
+        return heap.size();
+    }
+
+    /*
+     * Candidates are ordered from the least recent; with the same date a candidate offered
+     * later is considered less recent.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Resource resource;
+        private final long time;
+        private final long sequence;
+
+        private Candidate(Resource resource, long time, long sequence) {
+            this.resource = resource;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            if (time != o.time)
+                return time < o.time ? -1 : 1;
+            if (sequence != o.sequence)
+                return sequence > o.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+
+}
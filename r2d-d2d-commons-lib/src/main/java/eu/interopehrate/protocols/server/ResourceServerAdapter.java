@@ -2,13 +2,54 @@ package eu.interopehrate.protocols.server;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 import eu.interopehrate.protocols.common.ResourceCategory;
 
 public class ResourceServerAdapter implements ResourceServerListener {
 
+    // executor used to query the categories concurrently, null to query them sequentially
+    private volatile Executor executor;
+
+    public ResourceServerAdapter() {}
+
+    /**
+     *
+     * @param executor: the executor used to query the categories concurrently (see setExecutor).
+     */
+    public ResourceServerAdapter(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Method used to enable the concurrent mode: when more categories are requested, the
+     * query of every category is submitted to the provided executor, so the request lasts
+     * as the slowest query instead of the sum of all of them. In this mode
+     * onResourcesRequested(category, subCategory, type, from, isSummary) is invoked
+     * concurrently by the threads of the executor, so it must be thread safe.
+     * The executor is not shut down by the adapter.
+     *
+     * @param executor: the executor to be used, null to query the categories sequentially.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     *
+     * @return the executor used to query the categories, null in sequential mode.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
 
     @Override
     public Bundle onResourcesRequested(String... ids) throws Exception {
@@ -22,23 +63,72 @@ public class ResourceServerAdapter implements ResourceServerListener {
 
     @Override
     public Bundle onResourcesRequested(Date from, boolean isSummary, ResourceCategory... categories) throws Exception {
-        final Bundle mergedBundle = new Bundle();
-        final ArrayList<String> insertedResources = new ArrayList<String>();
-        Bundle bundle = new Bundle();
-        
-        for (ResourceCategory category : categories) {
-            bundle = onResourcesRequested(category, null, null, from, isSummary);
-            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
-                if (!insertedResources.contains(entry.getId())) {
-                    mergedBundle.addEntry().setResource(entry.getResource());
-                    insertedResources.add(entry.getId());
+        final Executor currentExecutor = executor;
+        if (currentExecutor != null && categories.length > 1)
+            return requestConcurrently(currentExecutor, from, isSummary, categories);
+
+        final BundleMerger merger = new BundleMerger();
+
+        for (ResourceCategory category : categories)
+            merger.add(onResourcesRequested(category, null, null, from, isSummary));
+
+        return merger.getBundle();
+    }
+
+    /*
+     * Submits the query of every category to the executor and merges the results as soon as
+     * they are available, following the order of the categories: a result is merged when the
+     * results of all the previous categories have been merged, so the content of the Bundle
+     * does not depend on the order of completion. The first failure cancels the queries still
+     * running and is thrown to the caller.
+     */
+    private Bundle requestConcurrently(Executor executor, final Date from, final boolean isSummary,
+                                       ResourceCategory... categories) throws Exception {
+        final CompletionService<Bundle> service = new ExecutorCompletionService<Bundle>(executor);
+        final Map<Future<Bundle>, Integer> positions = new HashMap<Future<Bundle>, Integer>();
+        final Bundle[] results = new Bundle[categories.length];
+        final boolean[] completed = new boolean[categories.length];
+        final BundleMerger merger = new BundleMerger();
+
+        try {
+            for (int i = 0; i < categories.length; i++) {
+                final ResourceCategory category = categories[i];
+                positions.put(service.submit(new Callable<Bundle>() {
+                    @Override
+                    public Bundle call() throws Exception {
+                        return onResourcesRequested(category, null, null, from, isSummary);
+                    }
+                }), i);
+            }
+
+            Future<Bundle> future;
+            int position;
+            int next = 0;
+            for (int i = 0; i < categories.length; i++) {
+                future = service.take();
+                position = positions.get(future);
+                results[position] = future.get();
+                completed[position] = true;
+
+                while (next < categories.length && completed[next]) {
+                    merger.add(results[next]);
+                    results[next++] = null;
                 }
             }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        } finally {
+            // no effect on the queries already completed
+            for (Future<Bundle> f : positions.keySet())
+                f.cancel(true);
         }
 
-        insertedResources.clear();
-
-        return mergedBundle;
+        return merger.getBundle();
     }
 
     @Override
@@ -46,9 +136,30 @@ public class ResourceServerAdapter implements ResourceServerListener {
         return null;
     }
 
+    /**
+     * Default implementation selecting the most recent resources among the ones returned by
+     * onResourcesRequested(category, subCategory, type, from, isSummary) with no date.
+     * Backends able to retrieve the most recent resources directly should override it.
+     */
     @Override
     public Bundle onResourcesRequested(ResourceCategory category, String subCategory, String type, int mostRecentSize, boolean isSummary) throws Exception {
-        return null;
+        Bundle bundle = onResourcesRequested(category, subCategory, type, (Date) null, isSummary);
+        if (bundle == null)
+            return null;
+
+        return selectMostRecent(bundle, mostRecentSize);
+    }
+
+    /**
+     * Method used to select the most recent resources of a Bundle in O(n log k), without
+     * sorting the whole Bundle.
+     *
+     * @param bundle: the Bundle containing the candidates.
+     * @param mostRecentSize: the number of resources to be selected.
+     * @return a new Bundle containing the selected resources, from the most recent one.
+     */
+    protected static Bundle selectMostRecent(Bundle bundle, int mostRecentSize) {
+        return MostRecentSelector.select(bundle, mostRecentSize);
     }
 
     @Override
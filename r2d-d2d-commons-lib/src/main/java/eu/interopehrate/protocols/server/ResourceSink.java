@@ -0,0 +1,24 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Destination of the resources produced by a StreamingResourceServerListener.
+ *               The resources are pushed one at a time, so the sink can send them as soon
+ *               as they are produced.
+ */
+public interface ResourceSink {
+
+    /**
+     * Method invoked to push a resource into the sink.
+     *
+     * @param resource: the resource produced by the listener.
+     * @throws Exception in case of failure (for instance if the connection is closed), the
+     *                   listener must stop producing resources.
+     */
+    void add(Resource resource) throws Exception;
+
+}
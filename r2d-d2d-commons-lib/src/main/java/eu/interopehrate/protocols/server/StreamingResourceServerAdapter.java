@@ -0,0 +1,81 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.Date;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Bridges a Bundle-returning ResourceServerListener to the streaming interface:
+ *               the Bundle returned by the listener is pushed, resource by resource, into the
+ *               sink. The Bundle is still built by the listener, but its serialization is
+ *               done in chunks by the sink.
+ *
+ *  Usage:
+ *
+ *  StreamingResourceServerListener listener = new StreamingResourceServerAdapter(existingListener);
+ *
+ */
+public class StreamingResourceServerAdapter implements StreamingResourceServerListener {
+
+    private final ResourceServerListener listener;
+
+    /**
+     *
+     * @param listener: the listener to be bridged.
+     */
+    public StreamingResourceServerAdapter(ResourceServerListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Invalid argument: the listener cannot be null.");
+
+        this.listener = listener;
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, String... ids) throws Exception {
+        push(listener.onResourcesRequested(ids), sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, Date from, boolean isSummary) throws Exception {
+        push(listener.onResourcesRequested(from, isSummary), sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, Date from, boolean isSummary,
+                                     ResourceCategory... categories) throws Exception {
+        push(listener.onResourcesRequested(from, isSummary, categories), sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, ResourceCategory category, String subCategory,
+                                     String type, Date from, boolean isSummary) throws Exception {
+        push(listener.onResourcesRequested(category, subCategory, type, from, isSummary), sink);
+    }
+
+    @Override
+    public void onResourcesRequested(ResourceSink sink, ResourceCategory category, String subCategory,
+                                     String type, int mostRecentSize, boolean isSummary) throws Exception {
+        push(listener.onResourcesRequested(category, subCategory, type, mostRecentSize, isSummary), sink);
+    }
+
+    @Override
+    public void onResourcesReceived(Bundle healthDataBundle) throws Exception {
+        listener.onResourcesReceived(healthDataBundle);
+    }
+
+    private static void push(Bundle bundle, ResourceSink sink) throws Exception {
+        if (bundle == null)
+            return;
+
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.getResource() != null)
+                sink.add(entry.getResource());
+        }
+    }
+
+}
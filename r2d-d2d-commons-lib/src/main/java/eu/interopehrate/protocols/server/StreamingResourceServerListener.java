@@ -0,0 +1,118 @@
+package eu.interopehrate.protocols.server;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.Date;
+
+import eu.interopehrate.protocols.common.ResourceCategory;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Streaming variant of ResourceServerListener: instead of returning a Bundle
+ *               the listener pushes the matching resources into a ResourceSink, so they can be
+ *               serialized and sent while the query is still running, with a memory usage
+ *               that does not depend on the number of resources. The arguments of the
+ *               queries have the same meaning of the ones of ResourceServerListener.
+ *               StreamingResourceServerAdapter bridges an existing ResourceServerListener.
+ */
+public interface StreamingResourceServerListener {
+
+    /**
+     * Method invoked to retrieve an array of Resources identified by their unique IDs.
+     *
+     * @param sink: the sink receiving the matching resources.
+     * @param ids: array of IDs of the resources to be retrieved.
+     * @throws Exception in case of failure
+     */
+    void onResourcesRequested(ResourceSink sink, String... ids) throws Exception;
+
+
+    /**
+     * Method invoked to execute a search of Resources belonging of whatever type produced after
+     * a certain date.
+     *
+     * @param sink: the sink receiving the matching resources.
+     * @param from: mandatory argument used to specify the date beyond which resources must be retrieved.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @throws Exception in case of failure
+     */
+    void onResourcesRequested(ResourceSink sink, Date from, boolean isSummary) throws Exception;
+
+
+    /**
+     * Method invoked to execute a search of Resources belonging to one or more specified categories.
+     *
+     * @param sink: the sink receiving the matching resources.
+     * @param from: optional argument used to specify the date beyond which resources must be retrieved.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @param categories: mandatory set of categories.
+     * @throws Exception in case of failure
+     */
+    void onResourcesRequested(ResourceSink sink,
+                              Date from,
+                              boolean isSummary,
+                              ResourceCategory... categories) throws Exception;
+
+
+    /**
+     * Method invoked to execute a search of Resources belonging to a specific category.
+     *
+     * @param sink: the sink receiving the matching resources.
+     * @param category: mandatory instance of FHIRResourceCategory identifying the type of the
+     *                 requested resources.
+     * @param subCategory: optional parameter used to filter on a specific sub category of the provided
+     *                   <strong>category</strong> argument.
+     * @param type:    optional code identifying, within the requested <strong>category</strong>,
+     *                 what instances of resources must be retrieved, in the form
+     *                 "&lt;system name&gt;|&lt;code&gt;".
+     * @param from: argument used to specify the date beyond which resources must be retrieved.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @throws Exception in case of failure
+     */
+    void onResourcesRequested(ResourceSink sink,
+                              ResourceCategory category,
+                              String subCategory,
+                              String type,
+                              Date from,
+                              boolean isSummary) throws Exception;
+
+
+    /**
+     * Method invoked to execute a search of the mostRecentSize Resources belonging to a specific category.
+     *
+     * @param sink: the sink receiving the matching resources.
+     * @param category: mandatory instance of FHIRResourceCategory identifying the type of the
+     *                 requested resources.
+     * @param subCategory: optional parameter used to filter on a specific sub category of the provided
+     *                   <strong>category</strong> argument.
+     * @param type:    optional code identifying, within the requested <strong>category</strong>,
+     *                 what instances of resources must be retrieved, in the form
+     *                 "&lt;system name&gt;|&lt;code&gt;".
+     * @param mostRecentSize: mandatory argument specifying the number of resources to be retrieved.
+     * @param isSummary: optional argument used to specify if the client needs the entire
+     *                   resource or only a portion of it.
+     * @throws Exception in case of failure
+     */
+    void onResourcesRequested(ResourceSink sink,
+                              ResourceCategory category,
+                              String subCategory,
+                              String type,
+                              int mostRecentSize,
+                              boolean isSummary) throws Exception;
+
+
+    /**
+     * Metod invoked to notify the listener about the fact the new health data produced by the HCP
+     * App have received.
+     *
+     * @param healthDataBundle: bundle of heterogeneous FHIR resources
+     * @throws Exception in case of failure
+     */
+    void onResourcesReceived(Bundle healthDataBundle) throws Exception;
+
+}
@@ -0,0 +1,133 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Tests of CborBundleCodec.
+ */
+public class CborBundleCodecTest {
+
+    private final BundleCodec codec = new CborBundleCodec(CodecTestBundles.parsers());
+
+    @Test
+    public void roundTripPreservesTheBundle() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+
+        Bundle decoded = codec.decode(codec.encode(bundle));
+
+        assertEquals(CodecTestBundles.toJson(bundle), CodecTestBundles.toJson(decoded));
+    }
+
+    @Test
+    public void roundTripPreservesTheScaleOfDecimals() throws IOException {
+        Bundle decoded = codec.decode(codec.encode(CodecTestBundles.create()));
+
+        for (int i = 0; i < CodecTestBundles.DECIMALS.length; i++) {
+            Quantity quantity = (Quantity) ((Observation) decoded.getEntry().get(i + 1).getResource()).getValue();
+            assertEquals(CodecTestBundles.DECIMALS[i], quantity.getValueElement().getValueAsString());
+        }
+    }
+
+    @Test
+    public void roundTripPreservesNonAsciiTextAndPrimitiveExtensions() throws IOException {
+        Patient patient = (Patient) codec.decode(codec.encode(CodecTestBundles.create())).getEntry().get(0).getResource();
+
+        assertEquals(CodecTestBundles.NON_ASCII, patient.getNameFirstRep().getFamily());
+        assertEquals("1970-01", patient.getBirthDateElement().getValueAsString());
+        assertEquals(1, patient.getBirthDateElement().getExtension().size());
+        assertTrue(patient.getNameFirstRep().getGiven().get(0).getExtension().isEmpty());
+        assertEquals(1, patient.getNameFirstRep().getGiven().get(1).getExtension().size());
+        assertEquals("\u00e9poux", patient.getMaritalStatus().getText());
+    }
+
+    @Test
+    public void encodedBundleIsSmallerThanJson() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+
+        assertTrue(codec.encode(bundle).length < new JsonBundleCodec(CodecTestBundles.parsers()).encode(bundle).length);
+    }
+
+    @Test
+    public void truncatedDataIsRejected() {
+        byte[] data = encode();
+        for (int length = 0; length < data.length; length += Math.max(1, data.length / 50))
+            assertRejected(Arrays.copyOf(data, length));
+    }
+
+    @Test
+    public void corruptedDataIsRejected() {
+        byte[] data = encode();
+
+        // unsupported major 7 argument in place of the Bundle
+        byte[] corrupted = data.clone();
+        corrupted[0] = (byte) 0xFC;
+        assertRejected(corrupted);
+
+        // string reference to a string not seen yet
+        assertRejected(new byte[] { (byte) 0xA1, 0x00, (byte) 0xD8, 0x19, 0x18, 0x64 });
+
+        // element name index out of the dictionary
+        assertRejected(new byte[] { (byte) 0xA1, 0x19, (byte) 0xFF, (byte) 0xFF, 0x01 });
+
+        // content after the Bundle
+        assertRejected(Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test
+    public void deeplyNestedDataIsRejected() {
+        // nested arrays of one element, far deeper than the limit
+        byte[] nested = new byte[200 * 1024];
+        Arrays.fill(nested, (byte) 0x81);
+        nested[nested.length - 1] = 0x00;
+        assertRejected(nested);
+
+        // nested maps just above the limit
+        byte[] maps = new byte[(CborBundleCodec.MAX_DEPTH + 1) * 2 + 1];
+        for (int i = 0; i < maps.length - 1; i += 2) {
+            maps[i] = (byte) 0xA1;
+            maps[i + 1] = 0x00;
+        }
+        maps[maps.length - 1] = 0x00;
+        assertRejected(maps);
+    }
+
+    @Test
+    public void decimalFractionWithLargeExponentIsRejected() {
+        // [exponent -2^31, mantissa 1] would be written with billions of zeros
+        assertRejected(new byte[] { (byte) 0xC4, (byte) 0x82, 0x3A, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01 });
+        // [exponent 10^9, mantissa 1]
+        assertRejected(new byte[] { (byte) 0xC4, (byte) 0x82, 0x1A, 0x3B, (byte) 0x9A, (byte) 0xCA, 0x00, 0x01 });
+    }
+
+    private byte[] encode() {
+        try {
+            return codec.encode(CodecTestBundles.create());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void assertRejected(byte[] data) {
+        try {
+            codec.decode(data);
+            fail("Invalid data decoded: " + Arrays.toString(data));
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
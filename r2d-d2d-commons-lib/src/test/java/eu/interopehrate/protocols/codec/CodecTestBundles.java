@@ -0,0 +1,87 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.StringType;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Bundles used by the tests of the codecs, containing the values that are
+ *               easy to lose in a conversion: decimals with trailing zeros, mantissas out of
+ *               the range of a long, non ASCII text, extensions of primitive elements and
+ *               element names not in the dictionary of CborBundleCodec.
+ */
+final class CodecTestBundles {
+
+    static final FhirContext CONTEXT = FhirContext.forR4();
+
+    static final String[] DECIMALS = {
+            "1.50", "0.000001", "-12.3400", "0", "100",
+            "123456789012345678901234567890.123456789", "-98765432109876543210.5",
+            "12345678901234567890", "0.0000001", "0.00000010", "1e3", "-0"
+    };
+
+    static final String NON_ASCII = "M\u00fcller-\u0141ukasz \u5c71\u7530 \ud83d\ude00";
+
+    private static final String EXT_URL = "http://interopehrate.eu/fhir/StructureDefinition/test";
+
+    private CodecTestBundles() {}
+
+    static Bundle create() {
+        Bundle bundle = new Bundle();
+        bundle.setId("b1");
+        bundle.setType(Bundle.BundleType.COLLECTION);
+
+        Patient patient = new Patient();
+        patient.setId("p1");
+        HumanName name = patient.addName().setFamily(NON_ASCII);
+        name.addGiven("Anna");
+        // only the second given name has an extension, so "_given" starts with null
+        name.addGivenElement().setValue("Maria").addExtension(new Extension(EXT_URL, new StringType("nickname")));
+        DateType birthDate = new DateType("1970-01");
+        birthDate.addExtension(new Extension(EXT_URL, new StringType("approximate")));
+        patient.setBirthDateElement(birthDate);
+        patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        // not in the dictionary
+        patient.setMaritalStatus(new CodeableConcept().setText("\u00e9poux"));
+        patient.setMultipleBirth(new BooleanType(false));
+        bundle.addEntry().setFullUrl("Patient/p1").setResource(patient);
+
+        for (int i = 0; i < DECIMALS.length; i++) {
+            Observation observation = new Observation();
+            observation.setId("o" + i);
+            observation.setStatus(Observation.ObservationStatus.FINAL);
+            observation.setSubject(new Reference("Patient/p1"));
+            Quantity quantity = new Quantity();
+            quantity.setValueElement(new DecimalType(DECIMALS[i]));
+            quantity.setUnit("mg/dL");
+            observation.setValue(quantity);
+            bundle.addEntry().setFullUrl("Observation/o" + i).setResource(observation);
+        }
+
+        return bundle;
+    }
+
+    static String toJson(Bundle bundle) {
+        return CONTEXT.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    static ParserPool parsers() {
+        return new ParserPool(CONTEXT);
+    }
+
+}
@@ -0,0 +1,134 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Tests of CompressedBundleCodec, wrapping both the JSON and the CBOR codecs.
+ */
+public class CompressedBundleCodecTest {
+
+    private final BundleCodec json = new JsonBundleCodec(CodecTestBundles.parsers());
+    private final BundleCodec cbor = new CborBundleCodec(CodecTestBundles.parsers());
+
+    @Test
+    public void roundTripPreservesTheBundle() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+        String expected = CodecTestBundles.toJson(bundle);
+
+        for (BundleCodec codec : codecs()) {
+            Bundle decoded = codec.decode(codec.encode(bundle));
+            assertEquals(codec.getName(), expected, CodecTestBundles.toJson(decoded));
+
+            Patient patient = (Patient) decoded.getEntry().get(0).getResource();
+            assertEquals(codec.getName(), CodecTestBundles.NON_ASCII, patient.getNameFirstRep().getFamily());
+            for (int i = 0; i < CodecTestBundles.DECIMALS.length; i++) {
+                Quantity quantity = (Quantity) ((Observation) decoded.getEntry().get(i + 1).getResource()).getValue();
+                assertEquals(codec.getName(), CodecTestBundles.DECIMALS[i], quantity.getValueElement().getValueAsString());
+            }
+        }
+    }
+
+    @Test
+    public void nameIncludesTheCompression() {
+        assertEquals("json+gzip", new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP).getName());
+        assertEquals("cbor-iehr1+deflate", new CompressedBundleCodec(cbor, CompressedBundleCodec.Compression.DEFLATE).getName());
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+
+        for (BundleCodec codec : codecs()) {
+            byte[] data = codec.encode(bundle);
+            assertRejected(codec, new byte[0]);
+            assertRejected(codec, Arrays.copyOf(data, data.length / 2));
+            assertRejected(codec, Arrays.copyOf(data, 4));
+        }
+    }
+
+    @Test
+    public void corruptedDataIsRejected() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+
+        for (BundleCodec codec : codecs()) {
+            byte[] data = codec.encode(bundle);
+            byte[] corrupted = data.clone();
+            corrupted[0] ^= 0x5A;
+            corrupted[1] ^= 0x5A;
+            assertRejected(codec, corrupted);
+        }
+    }
+
+    @Test
+    public void decompressedSizeIsLimited() throws IOException {
+        // 16 MB of zeros compress to a few KB
+        byte[] zeros = new byte[1 << 20];
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+        OutputStream gzipOut = new GZIPOutputStream(gzip);
+        OutputStream deflateOut = new DeflaterOutputStream(deflate);
+        for (int i = 0; i < 16; i++) {
+            gzipOut.write(zeros);
+            deflateOut.write(zeros);
+        }
+        gzipOut.close();
+        deflateOut.close();
+        assertTrue(gzip.size() < 64 * 1024);
+
+        assertRejected(new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP,
+                Deflater.DEFAULT_COMPRESSION, 1 << 20), gzip.toByteArray());
+        assertRejected(new CompressedBundleCodec(json, CompressedBundleCodec.Compression.DEFLATE,
+                Deflater.DEFAULT_COMPRESSION, 1 << 20), deflate.toByteArray());
+    }
+
+    @Test
+    public void bundleWithinTheLimitIsDecoded() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+        int size = json.encode(bundle).length;
+        BundleCodec exact = new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP,
+                Deflater.DEFAULT_COMPRESSION, size);
+        BundleCodec smaller = new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP,
+                Deflater.DEFAULT_COMPRESSION, size - 1);
+
+        assertEquals(CodecTestBundles.toJson(bundle), CodecTestBundles.toJson(exact.decode(exact.encode(bundle))));
+        assertRejected(smaller, smaller.encode(bundle));
+    }
+
+    private BundleCodec[] codecs() {
+        return new BundleCodec[] {
+                new CompressedBundleCodec(json, CompressedBundleCodec.Compression.GZIP),
+                new CompressedBundleCodec(json, CompressedBundleCodec.Compression.DEFLATE),
+                new CompressedBundleCodec(cbor, CompressedBundleCodec.Compression.GZIP),
+                new CompressedBundleCodec(cbor, CompressedBundleCodec.Compression.DEFLATE, Deflater.BEST_SPEED)
+        };
+    }
+
+    private static void assertRejected(BundleCodec codec, byte[] data) {
+        try {
+            codec.decode(data);
+            fail(codec.getName() + ": invalid data decoded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package eu.interopehrate.protocols.codec;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *       Author: Engineering Ingegneria Informatica - University of Piraeus (UPRC)
+ *      Project: InteropEHRate - www.interopehrate.eu
+ *
+ *  Description: Tests of JsonBundleCodec.
+ */
+public class JsonBundleCodecTest {
+
+    private final BundleCodec codec = new JsonBundleCodec(CodecTestBundles.parsers());
+
+    @Test
+    public void roundTripPreservesTheBundle() throws IOException {
+        Bundle bundle = CodecTestBundles.create();
+
+        Bundle decoded = codec.decode(codec.encode(bundle));
+
+        assertEquals(CodecTestBundles.toJson(bundle), CodecTestBundles.toJson(decoded));
+    }
+
+    @Test
+    public void roundTripPreservesTheScaleOfDecimals() throws IOException {
+        Bundle decoded = codec.decode(codec.encode(CodecTestBundles.create()));
+
+        for (int i = 0; i < CodecTestBundles.DECIMALS.length; i++) {
+            Quantity quantity = (Quantity) ((Observation) decoded.getEntry().get(i + 1).getResource()).getValue();
+            assertEquals(CodecTestBundles.DECIMALS[i], quantity.getValueElement().getValueAsString());
+        }
+    }
+
+    @Test
+    public void encodedTextIsUtf8() throws IOException {
+        byte[] data = codec.encode(CodecTestBundles.create());
+
+        Patient patient = (Patient) codec.decode(data).getEntry().get(0).getResource();
+        assertEquals(CodecTestBundles.NON_ASCII, patient.getNameFirstRep().getFamily());
+        assertEquals(CodecTestBundles.toJson(CodecTestBundles.create()), new String(data, JsonBundleCodec.UTF_8));
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws IOException {
+        byte[] data = codec.encode(CodecTestBundles.create());
+
+        assertRejected(new byte[0]);
+        assertRejected(Arrays.copyOf(data, data.length / 2));
+        assertRejected(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test
+    public void corruptedDataIsRejected() {
+        assertRejected("{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":".getBytes(JsonBundleCodec.UTF_8));
+        assertRejected("not json".getBytes(JsonBundleCodec.UTF_8));
+        assertRejected("{\"resourceType\":\"Patient\"}".getBytes(JsonBundleCodec.UTF_8));
+    }
+
+    private void assertRejected(byte[] data) {
+        try {
+            codec.decode(data);
+            fail("Invalid data decoded: " + new String(data, JsonBundleCodec.UTF_8));
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}